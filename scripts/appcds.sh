@@ -0,0 +1,78 @@
+#!/bin/sh
+#
+# Copyright: 2016 Jan Path
+#            2016 Felix von der Heide
+#
+# This file is part of Breakout.
+#
+# Breakout is free software: you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation, either version 3 of the License, or
+# (at your option) any later version.
+#
+# Breakout is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License
+# along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+
+# Build breakout.jar and a class data sharing archive for it, then compare the
+# time to the first frame with and without the archive.
+#
+# The archive holds the classes of the game, acm.jar and the JDK that are
+# loaded until the first frame is painted. It is specific to the JVM that
+# created it, so it is generated here instead of being shipped prebuilt.
+# Needs JDK 13 or newer for -XX:ArchiveClassesAtExit.
+#
+# Usage: scripts/appcds.sh [<runs>]
+#
+# With a display the windowed game is used, otherwise the headless renderer.
+
+set -e
+
+cd "$(dirname "$0")/.."
+runs=${1:-5}
+build=build
+classes=$build/classes
+jar=$build/breakout.jar
+archive=$build/breakout.jsa
+
+rm -rf "$classes"
+mkdir -p "$classes"
+javac --release 8 -cp lib/acm.jar -d "$classes" $(find src -name '*.java')
+(cd "$classes" && jar xf ../../lib/acm.jar acm)
+jar cf "$jar" -C "$classes" .
+
+if [ -n "$DISPLAY" ]; then
+	main=programming.breakout.Main
+	args=
+else
+	main=programming.breakout.Headless
+	args=1
+fi
+
+run() {
+	java -Djava.awt.headless=$([ -n "$DISPLAY" ] && echo false || echo true) \
+	     -Dbreakout.startup.exit=true "$@" -cp "$jar" $main $args
+}
+
+# Training run, the classes loaded until the first frame go into the archive
+run -XX:ArchiveClassesAtExit="$archive" > /dev/null
+
+median() {
+	sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'
+}
+
+measure() {
+	i=0
+	while [ $i -lt "$runs" ]; do
+		run "$@" | sed -n 's/^first frame after \([0-9]*\) ms$/\1/p'
+		i=$((i + 1))
+	done | median
+}
+
+echo "first frame without archive: $(measure -Xshare:auto) ms"
+echo "first frame with archive:    $(measure -XX:SharedArchiveFile="$archive") ms"
+echo "start with: java -XX:SharedArchiveFile=$archive -cp $jar $main"
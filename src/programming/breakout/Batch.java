@@ -0,0 +1,81 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout;
+
+import programming.breakout.engine.BatchEnvironment;
+
+/**
+ * Steps many games of a {@link BatchEnvironment} with random actions and
+ * reports how many steps per second it manages.
+ *
+ * Usage: {@code Batch <games> <steps> [<threads>]}. By default there is a
+ * thread per core.
+ */
+public class Batch {
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: Batch <games> <steps> [<threads>]");
+			System.exit(1);
+		}
+
+		int games = Integer.parseInt(args[0]);
+		int steps = Integer.parseInt(args[1]);
+		int threads = args.length > 2 ? Integer.parseInt(args[2])
+			: Runtime.getRuntime().availableProcessors();
+
+		BatchEnvironment environment = new BatchEnvironment(games, threads);
+		long[] seeds = new long[games];
+		for (int i = 0; i < games; i += 1) {
+			seeds[i] = i;
+		}
+		environment.reset(seeds);
+
+		int[] actions = new int[games];
+		int random = 1;
+		long rewards = 0, episodes = 0;
+
+		long start = System.nanoTime();
+		for (int step = 0; step < steps; step += 1) {
+			for (int i = 0; i < games; i += 1) {
+				// xorshift, so choosing actions does not show up in the measurement
+				random ^= random << 13;
+				random ^= random >>> 17;
+				random ^= random << 5;
+				actions[i] = (random & 3) == 3 ? 0 : (random & 3) - 1;
+			}
+
+			environment.step(actions);
+
+			float[] reward = environment.getRewards();
+			boolean[] done = environment.getDone();
+			for (int i = 0; i < games; i += 1) {
+				rewards += (long) reward[i];
+				episodes += done[i] ? 1 : 0;
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		environment.close();
+
+		System.out.printf("%d games, %d threads: %.0f steps/s%n",
+		                  games, threads, (double) games * steps / seconds);
+		System.out.printf("%d episodes, %d total reward%n", episodes, rewards);
+	}
+}
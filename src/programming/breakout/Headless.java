@@ -0,0 +1,147 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout;
+
+import java.io.File;
+import java.io.IOException;
+
+import programming.breakout.engine.Autopilot;
+import programming.breakout.engine.Entity;
+import programming.breakout.engine.GameState;
+import programming.breakout.engine.Engine;
+import programming.breakout.engine.RewindBuffer;
+import programming.breakout.metrics.Metrics;
+import programming.breakout.view.OffscreenRenderer;
+
+/**
+ * Runs the game without a window as fast as possible and renders every tick
+ * into an offscreen image.
+ *
+ * Usage: {@code Headless [--autopilot] [--rewind <seconds>] <ticks>
+ * [<directory>]}. If a directory is given, every frame is written into it as a
+ * PNG file. With {@code --autopilot} an {@link Autopilot} plays, so the game
+ * does not end after the first ball. With {@code --rewind} the last seconds
+ * are recorded into a {@link RewindBuffer} and stepped through at the end. The
+ * time spent rendering (without writing the files) and all metrics are
+ * printed at the end.
+ */
+public class Headless {
+	private static final int WIDTH = 400;
+	private static final int HEIGHT = 650;
+
+	/**
+	 * Bytes the rewind buffer may use per second it holds
+	 */
+	private static final int REWIND_BYTES_PER_SECOND = 64 * 1024;
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		boolean autopilot = false;
+		double rewindSeconds = 0;
+		int first = 0;
+		while (first < args.length && args[first].startsWith("--")) {
+			if (args[first].equals("--autopilot")) {
+				autopilot = true;
+				first += 1;
+			} else if (args[first].equals("--rewind") && first + 1 < args.length) {
+				rewindSeconds = Double.parseDouble(args[first + 1]);
+				first += 2;
+			} else {
+				break;
+			}
+		}
+
+		if (args.length < first + 1) {
+			System.err.println("Usage: Headless [--autopilot] [--rewind <seconds>]"
+			                   + " <ticks> [<directory>]");
+			System.exit(1);
+		}
+
+		int ticks = Integer.parseInt(args[first]);
+		File directory = args.length > first + 1
+			? new File(args[first + 1]) : null;
+		if (directory != null) {
+			directory.mkdirs();
+		}
+
+		GameState game = new GameState();
+		Engine engine = new Engine(game);
+		OffscreenRenderer renderer = new OffscreenRenderer(game, WIDTH, HEIGHT);
+		if (autopilot) {
+			new Autopilot(game, engine);
+		}
+		RewindBuffer rewind = null;
+		GameState replay = new GameState();
+		if (rewindSeconds > 0) {
+			rewind = new RewindBuffer(game, replay, rewindSeconds,
+			                          (int) (rewindSeconds * REWIND_BYTES_PER_SECOND));
+		}
+		game.setPaused(false);
+
+		for (int i = 0; i < ticks; i += 1) {
+			engine.tick();
+			renderer.renderFrame();
+
+			if (directory != null) {
+				renderer.writeFrame(new File(directory,
+				                             String.format("frame%06d.png", i)));
+			}
+		}
+
+		System.out.printf("Rendered %d frames, %.3f ms/frame%n",
+		                  renderer.getFrameCount(),
+		                  renderer.getMillisPerFrame());
+		if (rewind != null) {
+			stepThrough(rewind, game, replay);
+		}
+		System.out.print(Metrics.report());
+	}
+
+	/**
+	 * Step through all recorded ticks and check that the last one matches the
+	 * game
+	 */
+	private static void stepThrough(RewindBuffer rewind, GameState game,
+	                                GameState replay) {
+		long start = System.nanoTime();
+		rewind.seek(rewind.getOldestTick());
+		while (rewind.step(1)) {
+		}
+		long elapsed = System.nanoTime() - start;
+
+		// Positions are quantized when recorded, so only compare them roughly
+		boolean matches =
+			game.getEntityList().size() == replay.getEntityList().size();
+		for (int i = 0; matches && i < game.getEntityList().size(); i += 1) {
+			Entity original = game.getEntityList().get(i);
+			Entity copy = replay.getEntityList().get(i);
+			matches = Math.abs(original.getX() - copy.getX()) < .1 &&
+				Math.abs(original.getY() - copy.getY()) < .1;
+		}
+
+		System.out.printf("Rewind held %.2f s in %d bytes, stepped through %d"
+		                  + " ticks in %.3f ms, last tick %s%n",
+		                  rewind.getSeconds(), rewind.getBytes(),
+		                  rewind.getNewestTick() - rewind.getOldestTick() + 1,
+		                  elapsed / 1e6, matches ? "matches" : "differs");
+	}
+}
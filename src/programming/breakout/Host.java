@@ -0,0 +1,81 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout;
+
+import programming.breakout.host.MatchHost;
+import programming.breakout.metrics.Histogram;
+import programming.breakout.metrics.Metrics;
+
+/**
+ * Runs many matches played by an autopilot without a window on a
+ * {@link MatchHost} and reports how well the host keeps up.
+ *
+ * Usage: {@code Host <matches> [<seconds>]}. Prints the matches per core, the
+ * share of the workers' time spent ticking, the memory used per match and all
+ * metrics, including the tick lateness percentiles.
+ */
+public class Host {
+	private static final int DEFAULT_SECONDS = 10;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: Host <matches> [<seconds>]");
+			System.exit(1);
+		}
+
+		int matches = Integer.parseInt(args[0]);
+		int seconds = args.length > 1
+			? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+
+		MatchHost host = new MatchHost();
+
+		long before = usedMemory();
+		for (int i = 0; i < matches; i += 1) {
+			host.addMatch(true);
+		}
+
+		host.start();
+		Thread.sleep(seconds * 1000L);
+		host.stop();
+
+		// Measured after running, as the bricks only exist once a round started
+		long memoryPerMatch = (usedMemory() - before) / Math.max(1, matches);
+
+		Histogram tickTime = Metrics.histogram("host.tickTime");
+		double busy = tickTime.getMean() * tickTime.getCount()
+			/ (seconds * 1e9 * host.getWorkerCount());
+
+		System.out.printf("%d matches on %d cores, %.1f matches/core%n",
+		                  matches, host.getWorkerCount(),
+		                  (double) matches / host.getWorkerCount());
+		System.out.printf("Workers busy %.1f%% of the time%n", busy*100);
+		System.out.printf("%.1f KiB/match%n", memoryPerMatch / 1024d);
+		System.out.print(Metrics.report());
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i += 1) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
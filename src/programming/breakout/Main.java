@@ -20,9 +20,16 @@
 
 package programming.breakout;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
 import programming.breakout.engine.GameState;
 import programming.breakout.engine.Controller;
 import programming.breakout.engine.Engine;
+import programming.breakout.engine.InputQueue;
+import programming.breakout.engine.Predictor;
+import programming.breakout.net.GameClient;
+import programming.breakout.net.GameServer;
 import programming.breakout.view.View;
 
 
@@ -59,18 +66,92 @@ import programming.breakout.view.View;
  * between program execution processes to alternate user experience. On the
  * other hand instance variables are used to store values that must have
  * class-wide scope.
+ *
+ * Started with {@code --server [port]} the game runs without a window and is
+ * streamed to clients, which are started with {@code --connect host[:port]}.
+ * Clients predict the game locally, so the paddle reacts without waiting for
+ * the server. Only the server pauses the game or changes its speed, clients
+ * can not. Spectators are started with {@code --watch host[:port]}.
  ***************************************/
 
 public class Main {
-	public static void main(String[] args) {
+	private static final int DEFAULT_PORT = 7890;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("--server")) {
+			runServer(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+		} else if (args.length > 1 && args[0].equals("--connect")) {
+			runClient(args[1], true);
+		} else if (args.length > 1 && args[0].equals("--watch")) {
+			runClient(args[1], false);
+		} else {
+			runLocal();
+		}
+	}
+
+	/**
+	 * Run the game in a window
+	 */
+	private static void runLocal() {
 		GameState game = new GameState();
 		Engine engine = new Engine(game);
 		View view = new View(game);
-		new Controller(game, engine.getPaddle(), true, false, view.getGCanvas());
+		new Controller(game, engine.getInputQueue(), true, false,
+		               view.getGCanvas());
 
 		Thread engineThread = new Thread(engine);
 		engineThread.start();
 
 		view.start();
 	}
+
+	/**
+	 * Run the game without a window and stream it to clients
+	 */
+	private static void runServer(int port) throws IOException {
+		GameState game = new GameState();
+		Engine engine = new Engine(game);
+		GameServer server = new GameServer(game, engine.getInputQueue(),
+		                                   new InetSocketAddress(port));
+		game.setPaused(false);
+
+		new Thread(server).start();
+		new Thread(engine).start();
+	}
+
+	/**
+	 * Show a game running on a server
+	 * @param address host and optionally port of the server
+	 * @param play whether to control the paddle or only watch
+	 */
+	private static void runClient(String address, boolean play)
+		throws IOException {
+		String[] parts = address.split(":");
+		int port = parts.length > 1 ? Integer.parseInt(parts[1]) : DEFAULT_PORT;
+
+		GameState game = new GameState();
+		GameState shown = game;
+		InputQueue input = null;
+		Predictor predictor = null;
+		if (play) {
+			// Show a prediction, the game on the server is only mirrored
+			shown = new GameState();
+			input = new InputQueue();
+			predictor = new Predictor(game, shown, input);
+		}
+
+		GameClient client =
+			new GameClient(new InetSocketAddress(parts[0], port), game,
+			               play ? predictor.getOutgoing() : null);
+		View view = new View(shown);
+		if (play) {
+			new Controller(shown, input, true, false, view.getGCanvas(),
+			               false);
+			new Thread(predictor).start();
+		}
+
+		new Thread(client).start();
+
+		view.start();
+	}
 }
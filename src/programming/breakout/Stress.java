@@ -0,0 +1,162 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import programming.breakout.engine.Autopilot;
+import programming.breakout.engine.Engine;
+import programming.breakout.engine.GameState;
+import programming.breakout.engine.Level;
+import programming.breakout.view.OffscreenRenderer;
+
+/**
+ * Runs the engine without a window on generated levels with many bricks and
+ * balls and prints a table of how fast it ticks, how much it allocates and how
+ * much time the garbage collector took, per level. Only ticks with the balls in
+ * play are measured. An {@link Autopilot} plays, so the round does not end
+ * right away.
+ *
+ * Usage: {@code Stress [--render] [--seconds <s>] [--bricks <n,...>]
+ * [--balls <n,...>]}. With {@code --render} every tick is also rendered
+ * offscreen. Every level runs for the given number of seconds or until the
+ * round ends, but at least a tick.
+ */
+public class Stress {
+	private static final int WIDTH = 400;
+	private static final int HEIGHT = 650;
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		boolean render = false;
+		double seconds = 2;
+		int[] bricks = { 1000, 10000, 100000, 1000000 };
+		int[] balls = { 1, 10, 100, 1000 };
+
+		for (int i = 0; i < args.length; i += 1) {
+			if (args[i].equals("--render")) {
+				render = true;
+			} else if (args[i].equals("--seconds") && i + 1 < args.length) {
+				seconds = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--bricks") && i + 1 < args.length) {
+				bricks = parseList(args[++i]);
+			} else if (args[i].equals("--balls") && i + 1 < args.length) {
+				balls = parseList(args[++i]);
+			} else {
+				System.err.println("Usage: Stress [--render] [--seconds <s>]"
+				                   + " [--bricks <n,...>] [--balls <n,...>]");
+				System.exit(1);
+			}
+		}
+
+		System.out.printf("%9s %6s %9s %9s %11s %11s %6s %8s%n",
+		                  "bricks", "balls", "setup ms", "ticks", "ticks/s",
+		                  "alloc MB/s", "GCs", "GC ms");
+		for (int brickCount : bricks) {
+			for (int ballCount : balls) {
+				run(Level.generate(brickCount, ballCount), render, seconds);
+			}
+		}
+	}
+
+	private static void run(Level level, boolean render, double seconds) {
+		long setupStart = System.nanoTime();
+		GameState game = new GameState();
+		Engine engine = new Engine(game, 0, level);
+		new Autopilot(game, engine);
+		OffscreenRenderer renderer =
+			render ? new OffscreenRenderer(game, WIDTH, HEIGHT) : null;
+		game.setPaused(false);
+
+		// Set up the round and wait for it to start
+		while (!engine.isPlaying()) {
+			engine.tick();
+			if (renderer != null) {
+				renderer.renderFrame();
+			}
+		}
+		double setupMillis = (System.nanoTime() - setupStart) / 1e6;
+
+		long gcCount = gcCount(), gcMillis = gcMillis();
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		long end = start + (long) (seconds * 1e9);
+		long ticks = 0;
+		do {
+			engine.tick();
+			if (renderer != null) {
+				renderer.renderFrame();
+			}
+			ticks += 1;
+		} while (System.nanoTime() - end < 0 && engine.isPlaying());
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		double allocationRate = allocated < 0 ? Double.NaN
+			: (allocatedBytes() - allocated) / elapsed / 1e6;
+		System.out.printf("%9d %6d %9.1f %9d %11.1f %11.1f %6d %8d%n",
+		                  level.getBricks(), level.getBalls(), setupMillis,
+		                  ticks, ticks / elapsed, allocationRate,
+		                  gcCount() - gcCount, gcMillis() - gcMillis);
+	}
+
+	private static int[] parseList(String list) {
+		String[] parts = list.split(",");
+		int[] result = new int[parts.length];
+		for (int i = 0; i < parts.length; i += 1) {
+			result[i] = Integer.parseInt(parts[i].trim());
+		}
+		return result;
+	}
+
+	/**
+	 * @return bytes allocated by this thread so far or -1 if the JVM does not
+	 * tell
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc :
+		       ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc :
+		       ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+}
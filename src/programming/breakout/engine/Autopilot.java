@@ -0,0 +1,118 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.util.Observable;
+import java.util.Observer;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * Plays the game instead of a {@link Controller}, e.g. for games running
+ * unattended. Whenever the ball changes direction, the point where it will
+ * cross the paddle line is computed in closed form, folding the wall
+ * reflections into the path. The paddle is moved there through the engine's
+ * input queue like any other input.
+ */
+public class Autopilot implements Observer {
+  private GameState state;
+  private InputQueue input;
+  private Rectangle paddle;
+  private Ball ball;
+
+  // Velocity the current target was computed for
+  private Vector2D predictedVelocity;
+  private double targetX = Double.NaN;
+
+  /**
+   * @param state the game to play
+   * @param engine the engine running the game
+   */
+  public Autopilot(GameState state, Engine engine) {
+    this.state = state;
+    this.input = engine.getInputQueue();
+    this.paddle = engine.getPaddle();
+    state.addObserver(this);
+  }
+
+  @Override
+  public void update(Observable observable, Object arg) {
+    if (arg instanceof GameDelta) {
+      for (Entity entity : ((GameDelta) arg).entitiesMoved) {
+        if (entity instanceof Ball) {
+          ball = (Ball) entity;
+        }
+      }
+    } else {
+      // A new round
+      ball = null;
+      predictedVelocity = null;
+      for (Entity entity : state.getEntityList()) {
+        if (entity instanceof Ball) {
+          ball = (Ball) entity;
+        }
+      }
+    }
+
+    if (ball == null) {
+      return;
+    }
+
+    // Only predict again after a collision changed the direction
+    if (ball.getVelocity() != predictedVelocity) {
+      predictedVelocity = ball.getVelocity();
+      targetX = predictLanding();
+    }
+
+    if (!Double.isNaN(targetX) && paddle.getX() != targetX) {
+      input.offerMotion(System.nanoTime(), targetX - paddle.getX(), 0);
+    }
+  }
+
+  /**
+   * @return the x coordinate to move the paddle to, or {@code NaN} if the ball
+   * is not falling towards the paddle line. While the ball rises the paddle
+   * stays where it is, so it does not hit the ball again right after a bounce.
+   */
+  private double predictLanding() {
+    double vx = ball.getVelocity().getX0();
+    double vy = ball.getVelocity().getX1();
+    double lineY = paddle.getY() - 2 * ball.getRadius();
+    if (vy <= 0 || ball.getY() > lineY) {
+      return Double.NaN;
+    }
+
+    double x = ball.getX() + vx * (lineY - ball.getY()) / vy;
+
+    // Fold the straight path back into the field, as the walls mirror it
+    double width = state.getWidth() - 2 * ball.getRadius();
+    x = Math.abs(x) % (2 * width);
+    if (x > width) {
+      x = 2 * width - x;
+    }
+
+    // Hit the ball a little off center in the direction it is flying, so it
+    // does not bounce straight up and down
+    double landing = x + ball.getRadius();
+    return landing - paddle.getWidth() / 2
+      - Math.signum(vx) * paddle.getWidth() / 64;
+  }
+}
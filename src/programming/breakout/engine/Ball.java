@@ -29,6 +29,12 @@ import programming.breakout.engine.Vector2D;
 public class Ball extends Entity {
 	private double radius;
 
+	/**
+	 * How far the ball can move before it could touch anything, as computed
+	 * by the engine
+	 */
+	private double freeDistance;
+
 	/**
 	 * @param position the initial position of the upper left corner of the ball
 	 * @param radius the radius of the ball
@@ -52,6 +58,21 @@ public class Ball extends Entity {
 		this.radius = radius;
 	}
 
+	/**
+	 * @return how far the ball can move before it could touch anything
+	 */
+	double getFreeDistance() {
+		return freeDistance;
+	}
+
+	/**
+	 * @param freeDistance how far the ball can move before it could touch
+	 * anything
+	 */
+	void setFreeDistance(double freeDistance) {
+		this.freeDistance = freeDistance;
+	}
+
 	/**
 	 * @return bounding rectangle
 	 */
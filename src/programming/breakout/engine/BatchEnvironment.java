@@ -0,0 +1,313 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * Many games stepped together, e.g. to train an agent. {@link #reset} starts
+ * every game from a seed, {@link #step} moves every paddle by an action and
+ * advances every game by one tick. Observations, rewards and whether a game
+ * ended are written into arrays that are allocated once, so they can be read
+ * after every step without copying.
+ *
+ * The observation of a game is {@link #OBSERVATION_SIZE} floats: ball x, y and
+ * velocity, then paddle x and y. Bricks alive are a bitmap with a bit per
+ * brick, in rows from the top left. A destroyed brick is rewarded with 1,
+ * losing the ball with -1. Both losing the ball and destroying the last brick
+ * end the game. The next step of such a game starts a new round, from the next
+ * seed once all bricks are destroyed.
+ *
+ * The games are split evenly between worker threads, which wait between steps.
+ */
+public class BatchEnvironment {
+	/**
+	 * Actions
+	 */
+	public static final int LEFT = -1;
+	public static final int STAY = 0;
+	public static final int RIGHT = 1;
+
+	public static final int OBSERVATION_SIZE = 6;
+
+	/**
+	 * How far an action moves the paddle
+	 */
+	private static final double PADDLE_STEP = 2;
+
+	static {
+		if (Engine.NUMBER_OF_BRICK_ROWS * Engine.NUMBER_OF_BRICK_COLS > 64) {
+			throw new AssertionError("Bricks do not fit into the bitmap");
+		}
+	}
+
+	/**
+	 * A game and what happened in it during a step
+	 */
+	private static class Game implements Observer {
+		GameState state;
+		Engine engine;
+		long seed;
+
+		/**
+		 * Index of every brick of the current round in the bitmap
+		 */
+		IdentityHashMap<Entity, Integer> brickIndex =
+			new IdentityHashMap<Entity, Integer>();
+		long bricks;
+		int destroyed;
+		boolean ballLost;
+
+		void start(long seed) {
+			this.seed = seed;
+			state = new GameState();
+			engine = new Engine(state, seed);
+			engine.skipDelays();
+			engine.setEventDriven(true);
+			state.addObserver(this);
+			state.setPaused(false);
+		}
+
+		@Override
+		public void update(Observable observable, Object arg) {
+			if (!(arg instanceof GameDelta)) {
+				// A new round
+				brickIndex.clear();
+				bricks = 0;
+				for (Entity entity : state.getEntityList()) {
+					if (entity instanceof Rectangle && !(entity instanceof Paddle)) {
+						bricks |= 1L << brickIndex.size();
+						brickIndex.put(entity, brickIndex.size());
+					}
+				}
+				return;
+			}
+
+			ArrayList<Entity> gone = ((GameDelta) arg).entitiesDestroyed;
+			for (int i = 0; i < gone.size(); i += 1) {
+				Entity entity = gone.get(i);
+				Integer index = brickIndex.get(entity);
+				if (index != null) {
+					bricks &= ~(1L << index);
+					destroyed += 1;
+				} else if (entity instanceof Paddle) {
+					ballLost = true;
+				}
+			}
+		}
+	}
+
+	private final Game[] games;
+	private final float[] observations;
+	private final long[] bricks;
+	private final float[] rewards;
+	private final boolean[] done;
+
+	private final Thread[] workers;
+	private volatile int[] actions;
+	private volatile int generation;
+	private volatile boolean closed;
+	private final AtomicInteger running = new AtomicInteger();
+	private volatile Thread stepper;
+
+	/**
+	 * @param size how many games to run
+	 * @param threads how many threads step the games
+	 */
+	public BatchEnvironment(int size, int threads) {
+		games = new Game[size];
+		for (int i = 0; i < size; i += 1) {
+			games[i] = new Game();
+		}
+		observations = new float[size * OBSERVATION_SIZE];
+		bricks = new long[size];
+		rewards = new float[size];
+		done = new boolean[size];
+
+		workers = new Thread[Math.max(1, Math.min(threads, size))];
+		for (int i = 0; i < workers.length; i += 1) {
+			final int from = size * i / workers.length;
+			final int to = size * (i + 1) / workers.length;
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work(from, to);
+				}
+			}, "BatchEnvironment worker " + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Start every game again
+	 * @param seeds a seed for every game
+	 */
+	public void reset(long[] seeds) {
+		for (int i = 0; i < games.length; i += 1) {
+			games[i].start(seeds[i]);
+			advanceToPlay(games[i]);
+			done[i] = false;
+			rewards[i] = 0;
+			observe(i);
+		}
+	}
+
+	/**
+	 * Advance every game by one tick
+	 * @param actions {@link #LEFT}, {@link #STAY} or {@link #RIGHT} for every
+	 * game
+	 */
+	public void step(int[] actions) {
+		this.actions = actions;
+		stepper = Thread.currentThread();
+		running.set(workers.length);
+		generation += 1;
+		for (Thread worker : workers) {
+			LockSupport.unpark(worker);
+		}
+
+		while (running.get() > 0) {
+			LockSupport.park(this);
+		}
+	}
+
+	/**
+	 * Stop the worker threads
+	 */
+	public void close() {
+		closed = true;
+		for (Thread worker : workers) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	/**
+	 * @return how many games are run
+	 */
+	public int size() {
+		return games.length;
+	}
+
+	/**
+	 * @return the observations of all games, {@link #OBSERVATION_SIZE} floats
+	 * per game
+	 */
+	public float[] getObservations() {
+		return observations;
+	}
+
+	/**
+	 * @return the bricks alive in every game, a bit per brick
+	 */
+	public long[] getBricks() {
+		return bricks;
+	}
+
+	/**
+	 * @return the reward of every game in the last step
+	 */
+	public float[] getRewards() {
+		return rewards;
+	}
+
+	/**
+	 * @return whether every game ended in the last step
+	 */
+	public boolean[] getDone() {
+		return done;
+	}
+
+	/**
+	 * Step the games from {@code from} to {@code to} whenever a step starts
+	 */
+	private void work(int from, int to) {
+		int seen = 0;
+		while (!closed) {
+			if (generation == seen) {
+				LockSupport.park(this);
+				continue;
+			}
+			seen = generation;
+
+			int[] actions = this.actions;
+			for (int i = from; i < to; i += 1) {
+				step(i, actions[i]);
+			}
+
+			if (running.decrementAndGet() == 0) {
+				LockSupport.unpark(stepper);
+			}
+		}
+	}
+
+	private void step(int i, int action) {
+		Game game = games[i];
+		if (game.engine.isFinished()) {
+			game.start(game.seed + games.length);
+		}
+		advanceToPlay(game);
+
+		game.destroyed = 0;
+		game.ballLost = false;
+		game.engine.movePaddle(action * PADDLE_STEP, 0, GameDelta.NO_INPUT);
+		game.engine.tick();
+
+		// The paddle is removed after the last brick as well
+		boolean won = game.engine.isFinished();
+		rewards[i] = game.destroyed - (game.ballLost && !won ? 1 : 0);
+		done[i] = game.ballLost || won;
+		observe(i);
+	}
+
+	/**
+	 * Tick a game until the ball is in play
+	 */
+	private static void advanceToPlay(Game game) {
+		while (!game.engine.isPlaying() && !game.engine.isFinished()) {
+			game.engine.tick();
+		}
+	}
+
+	private void observe(int i) {
+		Game game = games[i];
+		Ball ball = game.engine.getBall();
+		Rectangle paddle = game.engine.getPaddle();
+		int offset = i * OBSERVATION_SIZE;
+
+		if (ball != null) {
+			observations[offset] = (float) ball.getX();
+			observations[offset + 1] = (float) ball.getY();
+			observations[offset + 2] = (float) ball.getVelocity().getX0();
+			observations[offset + 3] = (float) ball.getVelocity().getX1();
+		}
+		observations[offset + 4] = (float) paddle.getX();
+		observations[offset + 5] = (float) paddle.getY();
+		bricks[i] = game.bricks;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.util.Arrays;
+
+/**
+ * The components of all bricks in dense arrays, one column per component and
+ * one row per brick. Systems testing the ball against bricks only walk the
+ * columns they need instead of following each brick's references. Rows of
+ * removed bricks are only marked, so a row keeps its index for the round.
+ */
+class BrickTable {
+	private Rectangle[] entities = new Rectangle[16];
+	private double[] x = new double[16];
+	private double[] y = new double[16];
+	private double[] width = new double[16];
+	private double[] height = new double[16];
+	private boolean[] alive = new boolean[16];
+	private int size;
+	private int count;
+
+	/**
+	 * Y coordinate of the lowest edge of any brick, {@code NaN} when it has to
+	 * be computed again
+	 */
+	private double lowestY = Double.NaN;
+
+	/**
+	 * Remove all rows
+	 */
+	void clear() {
+		Arrays.fill(entities, 0, size, null);
+		size = 0;
+		count = 0;
+		lowestY = Double.NaN;
+	}
+
+	/**
+	 * Add a row for a brick
+	 *
+	 * @return the index of the row
+	 */
+	int add(Rectangle brick) {
+		if (size == entities.length) {
+			int capacity = size * 2;
+			entities = Arrays.copyOf(entities, capacity);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			width = Arrays.copyOf(width, capacity);
+			height = Arrays.copyOf(height, capacity);
+			alive = Arrays.copyOf(alive, capacity);
+		}
+
+		entities[size] = brick;
+		x[size] = brick.getX();
+		y[size] = brick.getY();
+		width[size] = brick.getWidth();
+		height[size] = brick.getHeight();
+		alive[size] = true;
+		count += 1;
+		lowestY = Double.NaN;
+		return size++;
+	}
+
+	/**
+	 * Mark the brick in a row as removed
+	 */
+	void remove(int index) {
+		if (alive[index]) {
+			alive[index] = false;
+			count -= 1;
+			lowestY = Double.NaN;
+		}
+	}
+
+	/**
+	 * @return the number of rows, including those of removed bricks
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of bricks not removed
+	 */
+	int count() {
+		return count;
+	}
+
+	boolean isAlive(int index) {
+		return alive[index];
+	}
+
+	Rectangle getEntity(int index) {
+		return entities[index];
+	}
+
+	double getX(int index) {
+		return x[index];
+	}
+
+	double getY(int index) {
+		return y[index];
+	}
+
+	double getWidth(int index) {
+		return width[index];
+	}
+
+	double getHeight(int index) {
+		return height[index];
+	}
+
+	/**
+	 * @return the y coordinate of the lowest edge of any brick
+	 */
+	double getLowestY() {
+		if (Double.isNaN(lowestY)) {
+			lowestY = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < size; i += 1) {
+				if (alive[i]) {
+					lowestY = Math.max(lowestY, y[i] + height[i]);
+				}
+			}
+		}
+		return lowestY;
+	}
+}
@@ -35,36 +35,65 @@ import java.awt.Cursor;
 import java.awt.Toolkit;
 import java.awt.Point;
 
-import programming.breakout.engine.Vector2D;
+import programming.breakout.metrics.Metrics;
 
 public class Controller implements MouseListener,
                                    MouseMotionListener,
                                    KeyListener,
                                    FocusListener {
   private GameState state;
-  private Entity controlledObject;
+  private InputQueue input;
   private boolean freeX, freeY;
   private Component component;
   private Robot robot;
+  private boolean local;
 
   // Higher => lower sensitvity
   private static final double MOUSE_SENSITIVITY = 500;
 
-  private Cursor blankCursor = Toolkit.getDefaultToolkit()
-    .createCustomCursor(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB),
-                        new Point(0, 0), "blank cursor");
+  // Only warp the mouse back to the center when it gets this close to the edge
+  // of the component, as a fraction of its size
+  private static final double WARP_MARGIN = .25;
+
+  // Last known mouse position in the component
+  private int lastX, lastY;
+  private boolean hasLast = false;
+
+  // Whether we are waiting for the event caused by warping the mouse
+  private boolean warpPending = false;
+  private int staleEvents = 0;
+
+  // Give up waiting for the warp event after this many other events
+  private static final int MAX_STALE_EVENTS = 5;
+
+  // Created on first use, as they are slow to create and not needed before
+  // the game has the focus
+  private Cursor blankCursor;
+  private boolean robotFailed = false;
 
   /**
    * @param state the GameState object
-   * @param controlledObject the object to be controlled
+   * @param input the queue the engine takes the paddle movement from
    * @param x whether the object can be moved in the x direction
    * @param y whether the object can be moved in the y direction
    */
-  public Controller(GameState state, Entity controlledObject,
+  public Controller(GameState state, InputQueue input,
                     boolean x, boolean y,
                     Component component) {
+    this(state, input, x, y, component, true);
+  }
+
+  /**
+   * @param local whether the game runs in this process. A game mirrored from a
+   * server can not be paused, slowed down or sped up, as every frame from the
+   * server overwrites these settings.
+   */
+  public Controller(GameState state, InputQueue input,
+                    boolean x, boolean y,
+                    Component component, boolean local) {
+    this.local = local;
     this.state = state;
-    this.controlledObject = controlledObject;
+    this.input = input;
     this.freeX = x;
     this.freeY = y;
     this.component = component;
@@ -75,72 +104,95 @@ public class Controller implements MouseListener,
     component.addMouseMotionListener(this);
     component.addFocusListener(this);
 
-    // Create Robot for mouse catching
-    try {
-      robot = new Robot();
-    } catch(AWTException ex) {
-      ex.printStackTrace();
-    }
-
     state.setController(this);
 
     // Make cursor transparent
     setCursor();
   }
 
+  /**
+   * Create what is needed to catch the mouse once the game has the focus
+   */
   @Override
-  public void focusGained(FocusEvent e) {}
+  public void focusGained(FocusEvent e) {
+    getRobot();
+    getBlankCursor();
+  }
 
   @Override
   public void focusLost(FocusEvent e) {
-    state.setPaused(true);
+    if(local) {
+      state.setPaused(true);
+    }
   }
 
   /**
-   * Move controlled object and keep mouse in window
+   * Queue movement of the controlled object and keep mouse in window. Motion
+   * is measured relative to the last event and merged until the next tick.
    */
   @Override
   public void mouseMoved(MouseEvent event) {
     if(state.isPaused() || !component.hasFocus()) {
+      hasLast = false;
+      return;
+    }
+
+    Metrics.increment("controller.motionEvents");
+
+    if (warpPending) {
+      warpPending = false;
+      if (Math.abs(event.getX() - component.getWidth()/2) <= 1 &&
+          Math.abs(event.getY() - component.getHeight()/2) <= 1) {
+        // Event caused by the warp itself
+        Metrics.increment("controller.syntheticEvents");
+        return;
+      } else if (staleEvents < MAX_STALE_EVENTS) {
+        // Still an event from before the warp
+        warpPending = true;
+        staleEvents += 1;
+        Metrics.increment("controller.staleEvents");
+        return;
+      }
+    }
+
+    if (!hasLast) {
+      lastX = event.getX();
+      lastY = event.getY();
+      hasLast = true;
       return;
     }
 
-    component.requestFocusInWindow();
     // How much the mouse moved on screen
-    double xMoved = event.getX() - component.getWidth()/2;
-    double yMoved = event.getY() - component.getHeight()/2;
+    double xMoved = event.getX() - lastX;
+    double yMoved = event.getY() - lastY;
+    lastX = event.getX();
+    lastY = event.getY();
 
     // Translate that to the playing field
     double dx = xMoved/MOUSE_SENSITIVITY*state.getWidth();
     double dy = yMoved/MOUSE_SENSITIVITY*state.getHeight();
 
-    // Make sure we don't move the object out of the playing field
-    Rectangle bounds = controlledObject.getBounds();
-    dx += Math.max(0, -(bounds.getX() + dx)) -
-      Math.max(0, bounds.getX() + bounds.getWidth() + dx - state.getWidth());
-    dy += Math.max(0, -(bounds.getY() + dy)) -
-      Math.max(0, bounds.getY() + bounds.getHeight() + dy - state.getHeight());
-
-    // Move controlledObject
-    double newX = controlledObject.getX() + ((freeX) ? dx : 0);
-    double newY = controlledObject.getY() + ((freeY) ? dy : 0);
-
-    Vector2D newPosition = new Vector2D(newX, newY);
-
-    if (!controlledObject.getPosition().equals(newPosition)){
-      controlledObject.setPosition(newPosition);
-      state.addMoved(controlledObject);
+    // Let the engine move the controlled object at the start of the next tick
+    if ((freeX && dx != 0) || (freeY && dy != 0)) {
+      input.offerMotion(System.nanoTime(), freeX ? dx : 0, freeY ? dy : 0);
     }
 
-    assert isInField(): "Controlled object moved out of playing field.";
-
-    //Keep mouse in component. Don't do this every event in order to ignore the
-    //align.
-    if(Math.max(Math.abs(xMoved), Math.abs(yMoved)) > 0) {
+    //Keep mouse in component. Only warp it when it comes close to the edge.
+    if (isNearEdge(event.getX(), event.getY())) {
       alignMouse();
     }
   }
 
+  /**
+   * Whether the position in the component is close to its edge
+   */
+  private boolean isNearEdge(int x, int y) {
+    double marginX = component.getWidth()*WARP_MARGIN;
+    double marginY = component.getHeight()*WARP_MARGIN;
+    return x < marginX || x > component.getWidth() - marginX ||
+      y < marginY || y > component.getHeight() - marginY;
+  }
+
   /**
    * Grab the focus to the GCanvas as soon as the mouse enters, for keyboard
    * input
@@ -169,7 +221,7 @@ public class Controller implements MouseListener,
   @Override
   public void keyTyped(KeyEvent event) {
     // (Un)pause game with space
-    if(event.getKeyChar() == ' ') {
+    if(event.getKeyChar() == ' ' && local) {
       state.setPaused(!state.isPaused());
       setCursor();
       alignMouse();
@@ -181,6 +233,10 @@ public class Controller implements MouseListener,
    */
   @Override
   public void keyPressed(KeyEvent event) {
+    if(!local) {
+      return;
+    }
+
     if(event.getKeyCode() == KeyEvent.VK_SHIFT) {
       state.setTimeFactor(.2);
     } else if(event.getKeyCode() == KeyEvent.VK_CONTROL) {
@@ -193,6 +249,10 @@ public class Controller implements MouseListener,
    */
   @Override
   public void keyReleased(KeyEvent event) {
+    if(!local) {
+      return;
+    }
+
     if(event.getKeyCode() == KeyEvent.VK_SHIFT ||
        event.getKeyCode() == KeyEvent.VK_CONTROL) {
       state.setTimeFactor(1);
@@ -200,17 +260,6 @@ public class Controller implements MouseListener,
   }
 
 
-  /**
-   * Test if the controlled object is still inside the playing field
-   */
-  private boolean isInField() {
-    Rectangle bounds = controlledObject.getBounds();
-    return
-      bounds.getX() >= 0 && bounds.getY() >= 0 &&
-      bounds.getX() + bounds.getWidth() <= state.getWidth() &&
-      bounds.getY() + bounds.getHeight() <= state.getHeight();
-  }
-
   /**
    * Align mouse so that it doesn't move out of the window
    */
@@ -219,10 +268,24 @@ public class Controller implements MouseListener,
       return;
     }
 
+    Robot robot = getRobot();
+    if (robot == null) {
+      return;
+    }
+
     robot.mouseMove((int) (component.getLocationOnScreen().getX()
                            + component.getWidth()/2),
                     (int) (component.getLocationOnScreen().getY()
                            + component.getHeight()/2));
+
+    // Ignore events until the one caused by this warp arrives, the next
+    // movement is measured from the center
+    warpPending = true;
+    staleEvents = 0;
+    lastX = component.getWidth()/2;
+    lastY = component.getHeight()/2;
+    hasLast = true;
+    Metrics.increment("controller.warps");
   }
 
   /**
@@ -231,20 +294,45 @@ public class Controller implements MouseListener,
    */
   private void setCursor() {
     component.setCursor(state.isPaused() || state.isGameOver()
-                        ? Cursor.getDefaultCursor() : blankCursor);
+                        ? Cursor.getDefaultCursor() : getBlankCursor());
   }
 
   /**
-   * Get the object controlled by this controller
+   * Get the robot for mouse catching, creating it on first use
+   *
+   * @return the robot or {@code null} if it can not be created
    */
-  public Entity getControlledObject() {
-    return controlledObject;
+  private Robot getRobot() {
+    if (robot == null && !robotFailed) {
+      long start = System.nanoTime();
+      try {
+        robot = new Robot();
+      } catch(AWTException ex) {
+        robotFailed = true;
+        ex.printStackTrace();
+      }
+      Metrics.set("controller.robotMillis", (System.nanoTime() - start) / 1e6);
+    }
+    return robot;
+  }
+
+  /**
+   * Get the transparent cursor, creating it on first use
+   */
+  private Cursor getBlankCursor() {
+    if (blankCursor == null) {
+      blankCursor = Toolkit.getDefaultToolkit()
+        .createCustomCursor(new BufferedImage(16, 16,
+                                              BufferedImage.TYPE_INT_ARGB),
+                            new Point(0, 0), "blank cursor");
+    }
+    return blankCursor;
   }
 
   /**
-   * Set the controlled object
+   * Get the queue input is sent to
    */
-  public void setControlledObject(Entity controlledObject) {
-    this.controlledObject = controlledObject;
+  public InputQueue getInputQueue() {
+    return input;
   }
 }
@@ -21,6 +21,7 @@
 package programming.breakout.engine;
 
 import java.util.ArrayList;
+import java.util.Random;
 
 public class Engine implements Runnable {
 
@@ -40,9 +41,9 @@ public class Engine implements Runnable {
   /**
    * Bricks
    */
-  private ArrayList<Rectangle> bricks;
-  private static final int NUMBER_OF_BRICK_ROWS = 6;
-  private static final int NUMBER_OF_BRICK_COLS = 7;
+  private BrickTable bricks = new BrickTable();
+  static final int NUMBER_OF_BRICK_ROWS = 6;
+  static final int NUMBER_OF_BRICK_COLS = 7;
   private static final int BRICK_WIDTH = 8;
   private static final int BRICK_HEIGHT = 4;
 
@@ -50,138 +51,630 @@ public class Engine implements Runnable {
    * Ball
    */
   private static final double RADIUS = 1;
-  private static final Vector2D START_POS =
-    new Vector2D(PLAYING_FIELD_WIDTH / 2 - RADIUS,
-                 PLAYING_FIELD_HEIGHT / 2 - RADIUS);
   /* Velocity in units per frame */
   private Vector2D velocity = new Vector2D(0.0, 2);
+  private ArrayList<Ball> balls = new ArrayList<Ball>();
+
+  /**
+   * The ball being moved
+   */
   private Ball ball;
 
+  private Level level;
+
   /**
    * How much to wait between each frame
    */
-  private static final int REFRESH_RATE = 20;
+  public static final int REFRESH_RATE = 20;
 
   private GameState state;
 
+  /**
+   * Input from the player, applied at the start of every tick
+   */
+  private InputQueue input = new InputQueue();
+  private long tickCount = 0;
+
+  /**
+   * Where the direction of every new ball comes from
+   */
+  private Random random;
+
   public Engine(GameState state) {
+    this(state, new Random(), Level.DEFAULT);
+  }
+
+  /**
+   * @param seed seed of the randomness in the game, so the same input plays
+   *        the same game
+   */
+  public Engine(GameState state, long seed) {
+    this(state, new Random(seed), Level.DEFAULT);
+  }
+
+  /**
+   * @param seed seed of the randomness in the game
+   * @param level how many bricks and balls every round starts with
+   */
+  public Engine(GameState state, long seed, Level level) {
+    this(state, new Random(seed), level);
+  }
+
+  private Engine(GameState state, Random random, Level level) {
     this.state = state;
+    this.random = random;
+    this.level = level;
     state.setEngine(this);
-    state.setHeight(PLAYING_FIELD_HEIGHT);
-    state.setWidth(PLAYING_FIELD_WIDTH);
+    // Grow the field, so there is at least a unit between the bricks
+    state.setHeight
+      (Math.max(PLAYING_FIELD_HEIGHT,
+                3 * (level.getRows() * (BRICK_HEIGHT + 1) + 1)));
+    state.setWidth
+      (Math.max(PLAYING_FIELD_WIDTH,
+                level.getColumns() * (BRICK_WIDTH + 1) + 1));
     this.paddle = createPaddle();
   }
 
+  /**
+   * How many ticks to wait before a round starts and after the ball was lost
+   */
+  private static final int START_DELAY = 1000 / REFRESH_RATE;
+  private static final int RESTART_DELAY = 2000 / REFRESH_RATE;
+
+  /**
+   * The phases a round goes through
+   */
+  private enum Phase { NEW_ROUND, STARTING, PLAYING, RESTARTING, FOLLOWING }
+
+  private Phase phase = Phase.NEW_ROUND;
+  private int phaseTicks;
+
+  /**
+   * Whether to only test for collisions when the ball could have reached
+   * something since the last collision
+   */
+  private boolean eventDriven = Boolean.getBoolean("breakout.engine.eventDriven");
+
+  /**
+   * Margin for rounding errors when computing the free distance
+   */
+  private static final double FREE_DISTANCE_MARGIN = 1e-9;
+
+  /**
+   * Longest step a ball may make near something it could hit, as a fraction
+   * of its radius. Faster balls are moved in several sub-steps per tick
+   * instead. Not positive to always make a single step.
+   */
+  private double maxStepFraction =
+    Double.parseDouble(System.getProperty("breakout.engine.maxStepFraction",
+                                          "0.5"));
+  private static final int MAX_SUB_STEPS = 64;
+
+  /**
+   * How often the contacts of a step are gathered and resolved at most, as
+   * resolving them can push the ball into something else
+   */
+  private static final int MAX_CONTACT_ITERATIONS = 4;
+  private ArrayList<Vector2D> contacts = new ArrayList<Vector2D>();
+
+  /**
+   * Finds the bricks each ball could hit, updated at most once a tick and
+   * only when a ball is tested against the bricks
+   */
+  private SweepAndPrune broadPhase = new SweepAndPrune();
+  private boolean broadPhaseFilled = false;
+  private long broadPhaseTick = -1;
+  private IntList hitBricks = new IntList();
+  private int startDelay = START_DELAY;
+  private int restartDelay = RESTART_DELAY;
+
   @Override
   public void run() {
 
     // Restart the game until the player managed too destroy all the pour
     // little
     // bricks
-    while (!state.isGameOver()) {
-      // Initialise everything
-      ArrayList<Entity> list = state.getEntityList();
-      this.bricks = createBricks();
-      this.ball = createBall();
-      list.clear();
-      list.addAll(bricks);
-      list.add(ball);
-      list.add(paddle);
-
-      // Center paddle
-      paddle.setPosition
-	      (new Vector2D((state.getWidth() - paddle.getWidth()) / 2,
-                      state.getHeight() - paddle.getHeight() * 2));
-
-      // Notify observers of state without delta
-      state.endTick(false);
+    while (!isFinished()) {
+      long start = System.currentTimeMillis();
+
+      tick();
+
+      long elapsed = System.currentTimeMillis() - start;
 
+      try {
+        Thread.sleep(Math.max(0, REFRESH_RATE - elapsed));
+      } catch (InterruptedException ex) {
+      }
+    }
+  }
+
+  /**
+   * Advance the game by one tick. This does not wait, so it can also be used
+   * to run the game without a window as fast as possible.
+   */
+  public void tick() {
+    applyInput();
+
+    switch (phase) {
+    case NEW_ROUND:
+      startRound();
+      break;
+
+    case STARTING:
       // Wait a few ticks before starting the game
-      for (int i = 0; i < 1000; i += 20) {
-        try {
-          Thread.sleep(20);
-        } catch (InterruptedException ex) {
-        }
-        state.endTick();
+      state.endTick();
+      if (--phaseTicks <= 0) {
+        phase = Phase.PLAYING;
       }
+      break;
 
-      while (ballInField() && !state.isGameOver()) {
-        long start = System.currentTimeMillis();
+    case PLAYING:
+      if (!state.isPaused()) {
+        moveBalls();
+      }
+      state.endTick();
 
-        if (!state.isPaused()) {
-          moveBall();
-        }
+      if (gameOver()) {
+        state.setGameOver(true);
+      }
+
+      if (!ballInField(balls.get(0)) || state.isGameOver()) {
+        // When the ball fall out of the playing field the paddle is
+        // temporarily
+        // destroyed
+        state.remove(paddle);
         state.endTick();
 
-        if (gameOver()) {
-          state.setGameOver(true);
+        // Wait two seconds before restarting the game
+        phase = Phase.RESTARTING;
+        phaseTicks = restartDelay;
+      }
+      break;
+
+    case RESTARTING:
+      if (--phaseTicks <= 0 && !state.isGameOver()) {
+        phase = Phase.NEW_ROUND;
+      }
+      break;
+
+    case FOLLOWING:
+      // Rounds are started and ended by the game being followed, so are
+      // balls lost
+      if (!state.isPaused()) {
+        int subSteps = getSubSteps();
+        for (Ball b : balls) {
+          if (ballInField(b)) {
+            ball = b;
+            moveBall(subSteps);
+          }
         }
+      }
+      state.endTick();
+      break;
+    }
 
-        long elapsed = start - System.currentTimeMillis();
+    tickCount += 1;
+  }
 
-        try {
-          Thread.sleep(REFRESH_RATE - elapsed);
-        } catch (InterruptedException ex) {
-        }
+  /**
+   * returns whether the game is over, so there is no reason to tick any
+   * more
+   */
+  public boolean isFinished() {
+    return state.isGameOver() && phase == Phase.RESTARTING;
+  }
+
+  /**
+   * returns whether the ball is in play
+   */
+  public boolean isPlaying() {
+    return phase == Phase.PLAYING;
+  }
+
+  /**
+   * Do not wait before starting a round and after the ball was lost, e.g.
+   * when nobody watches
+   */
+  void skipDelays() {
+    startDelay = 0;
+    restartDelay = 0;
+  }
+
+  /**
+   * Set whether to compute when the ball will next touch something once after
+   * every collision, instead of testing for collisions every tick. Both play
+   * exactly the same game.
+   */
+  public void setEventDriven(boolean eventDriven) {
+    this.eventDriven = eventDriven;
+    for (Ball b : balls) {
+      b.setFreeDistance(0);
+    }
+  }
+
+  /**
+   * Set the longest step a ball may make near something it could hit, as a
+   * fraction of its radius
+   *
+   * @param maxStepFraction the fraction or a value that is not positive to
+   *        never split a tick into sub-steps
+   */
+  public void setMaxStepFraction(double maxStepFraction) {
+    this.maxStepFraction = maxStepFraction;
+  }
+
+  /**
+   * Move the paddle by all input queued since the last tick
+   */
+  private void applyInput() {
+    InputEvent event;
+    while ((event = input.poll()) != null) {
+      if (event.getSequence() > state.getInputSequence()) {
+        state.setInputSequence(event.getSequence());
+      }
+      if (!state.isPaused()) {
+        movePaddle(event.getDx(), event.getDy(), event.getTimestamp());
       }
+    }
+  }
 
-      // When the ball fall out of the playing field the paddle is
-      // temporarily
-      // destroyed
-      state.remove(paddle);
-      state.endTick();
+  /**
+   * Move the paddle, but not out of the playing field
+   *
+   * @param timestamp when the input causing the movement happened
+   */
+  void movePaddle(double dx, double dy, long timestamp) {
+    Rectangle bounds = paddle.getBounds();
+    dx += Math.max(0, -(bounds.getX() + dx)) -
+      Math.max(0, bounds.getX() + bounds.getWidth() + dx - state.getWidth());
+    dy += Math.max(0, -(bounds.getY() + dy)) -
+      Math.max(0, bounds.getY() + bounds.getHeight() + dy - state.getHeight());
+
+    Vector2D newPosition = paddle.getPosition().add(new Vector2D(dx, dy));
+
+    if (!paddle.getPosition().equals(newPosition)) {
+      paddle.setPosition(newPosition);
+      // The paddle might be in the way now
+      for (Ball b : balls) {
+        ball = b;
+        ball.setFreeDistance(Math.min(ball.getFreeDistance(),
+                                      distanceToPaddle()
+                                      - FREE_DISTANCE_MARGIN));
+      }
+      state.addMoved(paddle);
+      state.addInput(timestamp);
+    }
+  }
 
-      // Wait two seconds before restarting the game
-      try {
-        Thread.sleep(2000);
-      } catch (InterruptedException ex) {
+  /**
+   * Set up bricks, balls and paddle for a new round
+   */
+  private void startRound() {
+    // Initialise everything
+    ArrayList<Entity> list = state.getEntityList();
+    createBricks();
+    this.balls = createBalls();
+    list.clear();
+    for (int i = 0; i < bricks.size(); i += 1) {
+      list.add(bricks.getEntity(i));
+    }
+    list.addAll(balls);
+    list.add(paddle);
+    resetBroadPhase();
+
+    // Center paddle
+    paddle.setPosition
+      (new Vector2D((state.getWidth() - paddle.getWidth()) / 2,
+                    state.getHeight() - paddle.getHeight() * 2));
+
+    // Notify observers of state without delta
+    state.endTick(false);
+
+    phase = Phase.STARTING;
+    phaseTicks = startDelay;
+  }
+
+  /**
+   * Continue from whatever entities the game state contains instead of
+   * starting rounds, e.g. to predict a game running somewhere else. Has to be
+   * called again whenever entities were added or removed from outside.
+   *
+   * @param ballMoving whether the ball moves, it does not while the game being
+   *        followed waits for a round to start
+   */
+  void follow(boolean ballMoving) {
+    Paddle paddle = null;
+    balls = new ArrayList<Ball>();
+    bricks.clear();
+    for (Entity entity : state.getEntityList()) {
+      if (entity instanceof Paddle) {
+        paddle = (Paddle) entity;
+      } else if (entity instanceof Ball) {
+        balls.add((Ball) entity);
+      } else if (entity instanceof Rectangle) {
+        bricks.add((Rectangle) entity);
       }
     }
+
+    if (paddle != null) {
+      this.paddle = paddle;
+    }
+    if (paddle == null || !ballMoving) {
+      // Without a paddle the balls would only fly through
+      balls.clear();
+    }
+    for (Ball b : balls) {
+      b.setFreeDistance(0);
+    }
+    resetBroadPhase();
+    phase = Phase.FOLLOWING;
+  }
+
+  /**
+   * Move all balls. Balls leaving the field are removed, except for the last
+   * one, which ends the round.
+   */
+  private void moveBalls() {
+    int subSteps = getSubSteps();
+    for (int i = 0; i < balls.size(); i += 1) {
+      ball = balls.get(i);
+      moveBall(subSteps);
+
+      if (!ballInField(ball) && balls.size() > 1) {
+        broadPhase.remove(ball);
+        state.remove(ball);
+        balls.remove(i);
+        i -= 1;
+      }
+    }
+  }
+
+  /**
+   * Compute how many sub-steps the fastest ball needs per tick to stay under
+   * the longest allowed step
+   */
+  private int getSubSteps() {
+    if (maxStepFraction <= 0) {
+      return 1;
+    }
+
+    double subSteps = 1;
+    for (Ball b : balls) {
+      double step = b.getVelocity().getMagnitude() * state.getTimeFactor();
+      subSteps = Math.max(subSteps,
+                          Math.ceil(step / (maxStepFraction * b.getRadius())));
+    }
+    return (int) Math.min(subSteps, MAX_SUB_STEPS);
   }
 
   /**
    * this method moves the ball
+   *
+   * @param subSteps how many steps to split the tick into, if the ball could
+   *        hit something during it
    */
-  private void moveBall() {
+  private void moveBall(int subSteps) {
+    double timeFactor = state.getTimeFactor();
+    if (subSteps > 1) {
+      // Far from everything a single step can not miss a collision. The
+      // free distance is kept per ball, so the bricks are only looked at
+      // again once the ball has used it up.
+      double length = ball.getVelocity().getMagnitude() * timeFactor;
+      if (!eventDriven && ball.getFreeDistance() <= length) {
+        ball.setFreeDistance(computeFreeDistance() - FREE_DISTANCE_MARGIN);
+      }
+      if (ball.getFreeDistance() > length) {
+        subSteps = 1;
+      }
+    }
+
+    // Positions are computed from where the ball started or last bounced, so
+    // sub-steps without a collision end exactly where a single step would
+    Vector2D origin = ball.getPosition();
+    Vector2D velocity = ball.getVelocity();
+    int from = 0;
+    for (int i = 1; i <= subSteps; i += 1) {
+      if (moveBall(origin,
+                   velocity.scale(timeFactor
+                                  * ((double) (i - from) / subSteps)),
+                   velocity.scale(timeFactor / subSteps).getMagnitude())) {
+        origin = ball.getPosition();
+        velocity = ball.getVelocity();
+        from = i;
+      }
+    }
+  }
+
+  /**
+   * Move the ball and handle a collision at its new position
+   *
+   * @param origin where the ball is moved from
+   * @param offset how far the ball is moved from its origin
+   * @param step how far the ball moved since it was last moved
+   * @return whether the ball touched anything
+   */
+  private boolean moveBall(Vector2D origin, Vector2D offset, double step) {
     // Move ball, then handle collisions, so to not have frames, where the
     // ball
     // is overlapping something.
-    Vector2D newPosition =
-	    ball.getPosition().add(ball.getVelocity().scale(state.getTimeFactor()));
-
-    ball.setPosition(newPosition);
+    ball.setPosition(origin.add(offset));
     state.addMoved(ball);
 
-    handleCollisions();
+    // Nothing can have been hit before reaching the next obstacle
+    ball.setFreeDistance(ball.getFreeDistance() - step);
+    if (eventDriven && ball.getFreeDistance() > 0) {
+      return false;
+    }
+
+    boolean touched = handleCollisions();
+
+    if (eventDriven) {
+      ball.setFreeDistance(computeFreeDistance() - FREE_DISTANCE_MARGIN);
+    } else if (touched) {
+      // The distance was along the old direction
+      ball.setFreeDistance(0);
+    }
+    return touched;
   }
 
-  private void handleCollisions() {
-    // See if we collide with anything and get the vector that would move
-    // the
-    // ball out of collision
-    Vector2D outOfCollisonVector;
-    if ((outOfCollisonVector = getWallCollision()) != null ||
-        (outOfCollisonVector = getPaddleCollision()) != null ||
-        (outOfCollisonVector = getBrickCollison()) != null) {
-      collisionResponse(outOfCollisonVector);
+  /**
+   * Compute how far the ball can move in its current direction before it
+   * touches a wall, the paddle or a brick. Bricks and paddle are treated as
+   * their bounding rectangle grown by the radius of the ball, so the distance
+   * is never too long.
+   */
+  private double computeFreeDistance() {
+    double speed = ball.getVelocity().getMagnitude();
+    if (speed == 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double dx = ball.getVelocity().getX0() / speed;
+    double dy = ball.getVelocity().getX1() / speed;
+
+    // Walls
+    double distance = Double.POSITIVE_INFINITY;
+    if (dx < 0) {
+      distance = ball.getX() / -dx;
+    } else if (dx > 0) {
+      distance = (state.getWidth() - 2 * ball.getRadius() - ball.getX()) / dx;
+    }
+    if (dy < 0) {
+      distance = Math.min(distance, ball.getY() / -dy);
+    }
+
+    Vector2D center = ball.getCenter();
+    distance = Math.min(distance, distanceTo(paddle, center, dx, dy));
+    for (int i = 0; i < bricks.size(); i += 1) {
+      if (bricks.isAlive(i)) {
+        distance = Math.min(distance,
+                            distanceTo(bricks.getX(i), bricks.getY(i),
+                                       bricks.getWidth(i), bricks.getHeight(i),
+                                       center, dx, dy));
+      }
+    }
+
+    return Math.max(0, distance);
+  }
+
+  /**
+   * Compute how far the ball can move in its current direction before it
+   * touches the paddle
+   */
+  private double distanceToPaddle() {
+    double speed = ball.getVelocity().getMagnitude();
+    if (speed == 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return distanceTo(paddle, ball.getCenter(),
+                      ball.getVelocity().getX0() / speed,
+                      ball.getVelocity().getX1() / speed);
+  }
+
+  /**
+   * Distance along a ray from the ball's center to a rectangle grown by the
+   * ball's radius
+   *
+   * @return the distance or infinity if the ray misses it
+   */
+  private double distanceTo(Rectangle r, Vector2D center, double dx,
+                            double dy) {
+    return distanceTo(r.getX(), r.getY(), r.getWidth(), r.getHeight(), center,
+                      dx, dy);
+  }
+
+  private double distanceTo(double x, double y, double width, double height,
+                            Vector2D center, double dx, double dy) {
+    double radius = ball.getRadius();
+    double[] entryExit = { 0, Double.POSITIVE_INFINITY };
+    if (!clipSlab(center.getX0(), dx, x - radius, x + width + radius,
+                  entryExit) ||
+        !clipSlab(center.getX1(), dy, y - radius, y + height + radius,
+                  entryExit)) {
+      return Double.POSITIVE_INFINITY;
     }
+    return entryExit[0];
   }
 
-  private void collisionResponse(Vector2D outOfCollisonVector) {
-    // First move the ball out of collison
-    ball.setPosition(ball.getPosition().add(outOfCollisonVector));
+  /**
+   * Clip the part of a ray inside a slab
+   *
+   * @param entryExit the distances the ray enters and exits, narrowed to the
+   *        slab
+   * @return whether any part of the ray is left
+   */
+  private static boolean clipSlab(double origin, double direction, double min,
+                                  double max, double[] entryExit) {
+    if (direction == 0) {
+      return origin > min && origin < max;
+    }
 
-    // Mirror the velocity of the ball over the axis orthogonal to the
-    // outOfCollisonVector
-    Vector2D norm = outOfCollisonVector // Normalise vector
-      .scale(1 / outOfCollisonVector.getMagnitude());
-    // Get the velocity in the direction of the normal vector
-    double scalar = norm.dotProduct(ball.getVelocity());
+    double t0 = (min - origin) / direction;
+    double t1 = (max - origin) / direction;
+    entryExit[0] = Math.max(entryExit[0], Math.min(t0, t1));
+    entryExit[1] = Math.min(entryExit[1], Math.max(t0, t1));
+    return entryExit[0] <= entryExit[1];
+  }
 
-    // Scale the normal vector by that velocity
-    Vector2D mirroredDiff = norm.scale(scalar * 2);
-    Vector2D mirroredVelocity = ball.getVelocity().sub(mirroredDiff);
-    ball.setVelocity(mirroredVelocity);
+  /**
+   * Gather everything the ball overlaps and resolve it all at once. This is
+   * repeated while resolving pushed the ball into something else, at most
+   * {@link #MAX_CONTACT_ITERATIONS} times.
+   *
+   * @return whether the ball touched anything
+   */
+  private boolean handleCollisions() {
+    boolean touched = false;
+    for (int i = 0; i < MAX_CONTACT_ITERATIONS; i += 1) {
+      // Get the vectors that would move the ball out of each collision
+      contacts.clear();
+      addContact(getWallCollision());
+      addContact(getPaddleCollision());
+      addBrickContacts();
+
+      if (contacts.isEmpty()) {
+        break;
+      }
+      collisionResponse();
+      touched = true;
+    }
+    return touched;
+  }
+
+  private void addContact(Vector2D outOfCollisonVector) {
+    if (outOfCollisonVector != null) {
+      contacts.add(outOfCollisonVector);
+    }
+  }
+
+  private void collisionResponse() {
+    // First move the ball out of collison. Contacts pushing the same way
+    // overlap, so only the deepest one counts in each direction.
+    double left = 0, right = 0, up = 0, down = 0;
+    for (Vector2D outOfCollisonVector : contacts) {
+      left = Math.min(left, outOfCollisonVector.getX0());
+      right = Math.max(right, outOfCollisonVector.getX0());
+      up = Math.min(up, outOfCollisonVector.getX1());
+      down = Math.max(down, outOfCollisonVector.getX1());
+    }
+    ball.setPosition(ball.getPosition()
+                     .add(new Vector2D(left + right, up + down)));
+
+    for (Vector2D outOfCollisonVector : contacts) {
+      // Mirror the velocity of the ball over the axis orthogonal to the
+      // outOfCollisonVector
+      Vector2D norm = outOfCollisonVector // Normalise vector
+        .scale(1 / outOfCollisonVector.getMagnitude());
+      // Get the velocity in the direction of the normal vector
+      double scalar = norm.dotProduct(ball.getVelocity());
+
+      // Only if the ball still moves into it, a contact with the same
+      // normal may already have mirrored it
+      if (scalar < 0) {
+        // Scale the normal vector by that velocity
+        Vector2D mirroredDiff = norm.scale(scalar * 2);
+        ball.setVelocity(ball.getVelocity().sub(mirroredDiff));
+      }
+    }
   }
 
   /**
@@ -203,35 +696,83 @@ public class Engine implements Runnable {
   }
 
   /**
-   * this method handles a possible collision with a brick
-   *
-   * @return the shortest vector that moves the ball out of collision or
-   *         {@code null} if no collision was detected.
+   * this method handles possible collisions with bricks. Every brick hit is
+   * removed and the shortest vector that moves the ball out of it added to
+   * the contacts.
    */
-  private Vector2D getBrickCollison() {
+  private void addBrickContacts() {
     // First make a broad collision check
-    if (ball.getY() > getLowestBrickY()) {
-      return null;
+    if (ball.getY() > bricks.getLowestY()) {
+      return;
     }
 
-    // Test all bricks for collision. Only handle first.
-    Pair<Rectangle, Vector2D> collisionInfo = null;
-    for (Rectangle r : bricks) {
+    // Test the bricks the ball could reach for collision
+    hitBricks.clear();
+    IntList nearby = getNearbyBricks();
+    int rows = nearby == null ? bricks.size() : nearby.size();
+    for (int j = 0; j < rows; j += 1) {
+      int i = nearby == null ? j : nearby.get(j);
       Vector2D axis;
-      if ((axis = rectangleIsHit(r)) != null) {
-        collisionInfo = new Pair<Rectangle, Vector2D>(r, axis);
-        break;
+      if (bricks.isAlive(i) &&
+          (axis = rectangleIsHit(bricks.getX(i), bricks.getY(i),
+                                 bricks.getWidth(i),
+                                 bricks.getHeight(i))) != null) {
+        hitBricks.add(i);
+        contacts.add(axis);
       }
     }
 
-    // If a collision was detected, remove that brick
-    if (collisionInfo != null) {
-      bricks.remove(collisionInfo.getLeft());
-      state.remove(collisionInfo.getLeft());
-      return collisionInfo.getRight();
-    } else {
+    for (int j = 0; j < hitBricks.size(); j += 1) {
+      int i = hitBricks.get(j);
+      state.remove(bricks.getEntity(i));
+      broadPhase.remove(i);
+      bricks.remove(i);
+    }
+  }
+
+  /**
+   * Get the rows of the bricks the ball could reach this tick
+   *
+   * @return the rows or {@code null} to look at all rows
+   */
+  private IntList getNearbyBricks() {
+    if (balls.size() == 1) {
+      // A single ball is tested against all bricks faster than the broad
+      // phase is updated
       return null;
     }
+
+    if (!broadPhaseFilled) {
+      fillBroadPhase();
+    }
+    if (broadPhaseTick != tickCount) {
+      broadPhase.update(state.getTimeFactor());
+      broadPhaseTick = tickCount;
+    }
+    return broadPhase.getCandidates(ball);
+  }
+
+  /**
+   * Empty the broad phase after the bricks and balls were replaced. It is
+   * only filled again once needed.
+   */
+  private void resetBroadPhase() {
+    if (broadPhaseFilled) {
+      broadPhase.clear();
+      broadPhaseFilled = false;
+    }
+    broadPhaseTick = -1;
+  }
+
+  /**
+   * Put the current bricks and balls into the broad phase
+   */
+  private void fillBroadPhase() {
+    broadPhase.add(bricks);
+    for (Ball b : balls) {
+      broadPhase.add(b);
+    }
+    broadPhaseFilled = true;
   }
 
   /**
@@ -240,12 +781,11 @@ public class Engine implements Runnable {
   private Vector2D getPaddleCollision() {
     // First check if the bounding rectangle was hit
     if (rectangleIsHit(paddle) != null) {
-      // Check if the circle was hit
+      // Check if the circle was hit. Its geometry is only computed again when
+      // the paddle is resized.
       Vector2D outOfCollisionVector =
-	      ballIsHit(new Ball(paddle.getArcCenter()
-	                         .sub(new Vector2D(paddle.getRadius(),
-	                                           paddle.getRadius())),
-                           paddle.getRadius()));
+	      circleIsHit(paddle.getArcCenterX(), paddle.getArcCenterY(),
+	                  paddle.getRadius());
 
       if (outOfCollisionVector != null) {
         if (outOfCollisionVector.getX1() / outOfCollisionVector.getMagnitude()
@@ -274,22 +814,21 @@ public class Engine implements Runnable {
   }
 
   /**
-   * Checks if the playing ball overlaps with the given ball.
+   * Checks if the playing ball overlaps with the given circle.
    * 
+   * @param x the x coordinate of the center of the circle
+   * @param y the y coordinate of the center of the circle
    * @return the shortest vector that moves the playing ball out of collision.
    */
-  private Vector2D ballIsHit(Ball b) {
+  private Vector2D circleIsHit(double x, double y, double radius) {
     // a vector representing the center of the ball
     Vector2D ballCenter = new Vector2D(ball.getX() + ball.getRadius(),
                                        ball.getY() + ball.getRadius());
-    // a vector representing the center of the ball
-    Vector2D collisionCenter = new Vector2D(b.getX() + b.getRadius(),
-                                            b.getY() + b.getRadius());
 
-    Vector2D centerDistance = ballCenter.sub(collisionCenter);
+    Vector2D centerDistance = ballCenter.sub(new Vector2D(x, y));
 
     double overlapLength =
-	    ball.getRadius() + b.getRadius() - centerDistance.getMagnitude();
+	    ball.getRadius() + radius - centerDistance.getMagnitude();
     if (overlapLength > 0) {
       return
 	      centerDistance.scale(overlapLength / centerDistance.getMagnitude());
@@ -304,38 +843,42 @@ public class Engine implements Runnable {
    *         {@code null} if no collision was detected
    */
   private Vector2D rectangleIsHit(Rectangle r) {
+    return rectangleIsHit(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+  }
+
+  private Vector2D rectangleIsHit(double x, double y, double width,
+                                  double height) {
     // a vector representing the center of the ball
     Vector2D ballCenter = ball.getCenter();
-    Vector2D rectCenter =
-	    r.getPosition().add(new Vector2D(r.getWidth() / 2d, r.getHeight() / 2d));
+    Vector2D rectCenter = new Vector2D(x + width / 2d, y + height / 2d);
     Vector2D centerDistance = ballCenter.sub(rectCenter);
     Vector2D absDistance = new Vector2D(Math.abs(centerDistance.getX0()),
                                         Math.abs(centerDistance.getX1()));
 
-    if ((absDistance.getX0() >= r.getWidth() / 2 + ball.getRadius())
-        || (absDistance.getX1() >= r.getHeight() / 2 + ball.getRadius())) {
+    if ((absDistance.getX0() >= width / 2 + ball.getRadius())
+        || (absDistance.getX1() >= height / 2 + ball.getRadius())) {
       // The x or y coordinate difference is already bigger than the balls
       // radius
       return null;
 
-    } else if (absDistance.getX0() < r.getWidth() / 2) {
+    } else if (absDistance.getX0() < width / 2) {
       // Ball overlaps the top or bottom
       return
 	      new Vector2D(0, Math.copySign(absDistance.getX1()
-	                                    - (r.getHeight() / 2 + ball.getRadius()),
+	                                    - (height / 2 + ball.getRadius()),
                                            centerDistance.getX1()));
 
-    } else if (absDistance.getX1() < r.getHeight() / 2) {
+    } else if (absDistance.getX1() < height / 2) {
       // Ball overlaps the left or right edge
       return
 	      new Vector2D(Math.copySign(absDistance.getX0()
-	                                 - (r.getWidth() / 2 + ball.getRadius()),
+	                                 - (width / 2 + ball.getRadius()),
 	                                 centerDistance.getX0()), 0);
 
     } else {
       Vector2D cornerDistance =
-	      absDistance.sub(new Vector2D(r.getWidth(),
-                                     r.getHeight()).scale(.5));
+	      absDistance.sub(new Vector2D(width,
+                                     height).scale(.5));
       double overlapLength = ball.getRadius() - cornerDistance.getMagnitude();
       if (overlapLength > 0) {
         // Ball overlaps the corner
@@ -351,16 +894,24 @@ public class Engine implements Runnable {
   }
 
   /**
-   * returns the y coordinate of the lowest brick on the screen (the one with
-   * the highest y)
+   * returns the queue input for the paddle is taken from
    */
-  private double getLowestBrickY() {
-    double maxY = Double.NEGATIVE_INFINITY;
-    for (Rectangle r : bricks) {
-      maxY = (r.getY() + r.getHeight() > maxY) ?
-	      r.getY() + r.getHeight() : maxY;
-    }
-    return maxY;
+  public InputQueue getInputQueue() {
+    return input;
+  }
+
+  /**
+   * returns the number of ticks since the engine was created
+   */
+  public long getTickCount() {
+    return tickCount;
+  }
+
+  /**
+   * returns the first ball of the current round or {@code null}
+   */
+  Ball getBall() {
+    return balls.isEmpty() ? null : balls.get(0);
   }
 
   /**
@@ -383,30 +934,38 @@ public class Engine implements Runnable {
   }
 
   /**
-   * creates the ball
+   * creates the balls, evenly spread over the middle of the field
    */
-  private Ball createBall() {
-    Ball ball = new Ball(START_POS, RADIUS);
-    ball.setVelocity(velocity.rotate(Math.random() * Math.PI/2 - Math.PI/4));
-    return ball;
+  private ArrayList<Ball> createBalls() {
+    ArrayList<Ball> balls = new ArrayList<Ball>(level.getBalls());
+    for (int i = 0; i < level.getBalls(); i++) {
+      Vector2D position =
+        new Vector2D(state.getWidth() * (i + .5) / level.getBalls() - RADIUS,
+                     state.getHeight() / 2 - RADIUS);
+      Ball ball = new Ball(position, RADIUS);
+      ball.setVelocity(velocity.rotate(random.nextDouble() * Math.PI/2
+                                       - Math.PI/4));
+      balls.add(ball);
+    }
+    return balls;
   }
 
   /**
-   * creates the bricks and stores them in an array
+   * creates the bricks and stores them in the brick table
    */
-  private ArrayList<Rectangle> createBricks() {
-    ArrayList<Rectangle> bricks = new ArrayList<Rectangle>();
+  private void createBricks() {
+    bricks.clear();
     double brickSpacePerCol =
-	    state.getWidth() - (NUMBER_OF_BRICK_COLS * BRICK_WIDTH);
-    double colPadding = brickSpacePerCol / (NUMBER_OF_BRICK_COLS + 1);
+	    state.getWidth() - (level.getColumns() * BRICK_WIDTH);
+    double colPadding = brickSpacePerCol / (level.getColumns() + 1);
     double brickSpacePerRow =
-	    state.getHeight()/3d - (NUMBER_OF_BRICK_ROWS * BRICK_HEIGHT);
-    double rowPadding = brickSpacePerRow / (NUMBER_OF_BRICK_ROWS + 1);
+	    state.getHeight()/3d - (level.getRows() * BRICK_HEIGHT);
+    double rowPadding = brickSpacePerRow / (level.getRows() + 1);
     double x = colPadding;
     double y = rowPadding;
 
-    for (int i = 0; i < NUMBER_OF_BRICK_ROWS; i++) {
-      for (int j = 0; j < NUMBER_OF_BRICK_COLS; j++) {
+    for (int i = 0; i < level.getRows(); i++) {
+      for (int j = 0; j < level.getColumns(); j++) {
 
         Vector2D position = new Vector2D(x, y);
         Rectangle brick = new Rectangle(position, BRICK_WIDTH, BRICK_HEIGHT);
@@ -418,14 +977,13 @@ public class Engine implements Runnable {
       y += BRICK_HEIGHT + rowPadding;
       x = colPadding;
 		}
-		return bricks;
 	}
 
 	/**
 	 * checkes whether the ball is still in the playing field or only slightly
 	 * out of it.
 	 */
-	private boolean ballInField() {
+	private boolean ballInField(Ball ball) {
 		return ball.getY() < state.getHeight() * 1.1;
 	}
 
@@ -433,6 +991,6 @@ public class Engine implements Runnable {
 	 * Check if the game is over
 	 */
 	private boolean gameOver() {
-		return bricks.size() == 0;
+		return bricks.count() == 0;
 	}
 }
@@ -20,43 +20,29 @@
 
 package programming.breakout.engine;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import programming.breakout.engine.Vector2D;
 
 public abstract class Entity {
-	private Vector2D acceleration = new Vector2D(0, 0);
-	private Vector2D velocity = new Vector2D(0, 0);
-	private Vector2D position = new Vector2D(0, 0);
-
-	private String role;
+	private static final AtomicInteger nextId = new AtomicInteger();
 
-	private boolean visible;
+	private final int id = nextId.getAndIncrement();
 
 	/**
-	 * @return a string classifying the role of the ball
+	 * Shared by all entities that do not move, instead of each allocating
+	 * its own
 	 */
-	public String getRole() {
-		return role;
-	}
+	private static final Vector2D ZERO = new Vector2D(0, 0);
 
-	/**
-	 * Set the role of the entity
-	 */
-	void setRole(String role) {
-		this.role = role;
-	}
-
-	/**
-	 * @return the acceleration
-	 */
-	public Vector2D getAcceleration() {
-		return acceleration;
-	}
+	private Vector2D velocity = ZERO;
+	private Vector2D position = ZERO;
 
 	/**
-	 * @param acceleration the acceleration to set
+	 * @return a number identifying the entity, unique within this program
 	 */
-	void setAcceleration(Vector2D acceleration) {
-		this.acceleration = acceleration;
+	public int getId() {
+		return id;
 	}
 
 	/**
@@ -87,20 +73,6 @@ public abstract class Entity {
 		this.position = position;
 	}
 
-	/**
-	 * @return the visible
-	 */
-	public boolean isVisible() {
-		return visible;
-	}
-
-	/**
-	 * @param visible the visible to set
-	 */
-	void setVisible(boolean visible) {
-		this.visible = visible;
-	}
-
 	/**
 	 * @return the x coordinate of the object
 	 */
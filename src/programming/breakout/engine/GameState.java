@@ -37,6 +37,8 @@ public class GameState extends Observable {
 	private double width, height;
 	private GameDelta delta = new GameDelta();
 	private double timeFactor = 1;
+	private long inputSequence = InputEvent.NO_SEQUENCE;
+	private boolean held, fullUpdatePending;
 	private Controller controller;
 	private Engine engine;
 
@@ -44,12 +46,23 @@ public class GameState extends Observable {
 	 * Contains information about what changed since last time
 	 */
 	public static class GameDelta {
+		/**
+		 * Value of {@link #inputTimestamp} if no input was applied
+		 */
+		public static final long NO_INPUT = Long.MIN_VALUE;
+
 		public ArrayList<Entity> entitiesDestroyed;
 		public ArrayList<Entity> entitiesAdded;
 		public HashSet<Entity> entitiesMoved;
 		public int scoreDelta;
 		public boolean pausedToggled, gameOverToggled;
 
+		/**
+		 * When the oldest input applied in this tick happened, as given by
+		 * {@link System#nanoTime()}
+		 */
+		public long inputTimestamp = NO_INPUT;
+
 		GameDelta(ArrayList<Entity> entitiesDestroyed,
 		          ArrayList<Entity> entitiesAdded,
 		          HashSet<Entity> entitiesMoved,
@@ -79,6 +92,17 @@ public class GameState extends Observable {
 	}
 
 
+	/**
+	 * Note that input which happened at the given time was applied in this tick
+	 */
+	void addInput(long timestamp) {
+		if (delta.inputTimestamp == GameDelta.NO_INPUT ||
+		    timestamp - delta.inputTimestamp < 0) {
+			delta.inputTimestamp = timestamp;
+		}
+		setChanged();
+	}
+
 	/**
 	 * Add an item to the playing field
 	 */
@@ -93,7 +117,11 @@ public class GameState extends Observable {
 	 */
 	protected void remove(Entity e) {
 		entities.remove(e);
-		delta.entitiesDestroyed.add(e);
+		delta.entitiesMoved.remove(e);
+		// Observers never saw an entity added and removed in the same delta
+		if (!delta.entitiesAdded.remove(e)) {
+			delta.entitiesDestroyed.add(e);
+		}
 		setChanged();
 	}
 
@@ -102,6 +130,16 @@ public class GameState extends Observable {
 	 * @param useDelta whether to use the accumulated GameDelta
 	 */
 	void endTick(boolean useDelta) {
+		if (held) {
+			fullUpdatePending |= !useDelta;
+			return;
+		}
+
+		if (fullUpdatePending) {
+			fullUpdatePending = false;
+			useDelta = false;
+		}
+
 		if (useDelta) {
 			notifyObservers(delta);
 		} else {
@@ -112,6 +150,15 @@ public class GameState extends Observable {
 		delta = new GameDelta();
 	}
 
+	/**
+	 * Hold back ticks. While held, ending a tick does not notify observers, the
+	 * changes are collected and sent with the first tick ended after the hold
+	 * was released.
+	 */
+	void setHeld(boolean held) {
+		this.held = held;
+	}
+
 	/**
 	 * End tick using delta
 	 */
@@ -154,6 +201,24 @@ public class GameState extends Observable {
 		}
 	}
 
+	/**
+	 * Set whether the game is paused and over, without ending the tick. Used to
+	 * mirror a game running somewhere else.
+	 */
+	void setFlags(boolean paused, boolean gameOver) {
+		if (this.paused != paused) {
+			delta.pausedToggled = !delta.pausedToggled;
+			this.paused = paused;
+			setChanged();
+		}
+
+		if (this.gameOver != gameOver) {
+			delta.gameOverToggled = !delta.gameOverToggled;
+			this.gameOver = gameOver;
+			setChanged();
+		}
+	}
+
 	/**
 	 * @return the score
 	 */
@@ -195,6 +260,22 @@ public class GameState extends Observable {
 		}
 	}
 
+	/**
+	 * @return the sequence number of the last input applied to the game or
+	 * {@link InputEvent#NO_SEQUENCE}
+	 */
+	public long getInputSequence() {
+		return inputSequence;
+	}
+
+	/**
+	 * @param inputSequence the sequence number of the last input applied
+	 */
+	void setInputSequence(long inputSequence) {
+		this.inputSequence = inputSequence;
+		setChanged();
+	}
+
 	/**
 	 * @return the width of the playing field
 	 */
@@ -0,0 +1,92 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+/**
+ * A single, immutable input from the player.
+ */
+public class InputEvent {
+	/**
+	 * Sequence number of input that is not numbered
+	 */
+	public static final long NO_SEQUENCE = 0;
+
+	private final long timestamp;
+	private final double dx, dy;
+	private final long sequence;
+
+	/**
+	 * @param timestamp when the input happened, as given by
+	 * {@link System#nanoTime()}
+	 * @param dx how far to move the paddle in x direction, in game units
+	 * @param dy how far to move the paddle in y direction, in game units
+	 */
+	public InputEvent(long timestamp, double dx, double dy) {
+		this(timestamp, dx, dy, NO_SEQUENCE);
+	}
+
+	/**
+	 * @param sequence increasing number of the input, so the sender can tell
+	 * which input was applied
+	 */
+	public InputEvent(long timestamp, double dx, double dy, long sequence) {
+		this.timestamp = timestamp;
+		this.dx = dx;
+		this.dy = dy;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return when the input happened, as given by {@link System#nanoTime()}
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return how far to move the paddle in x direction
+	 */
+	public double getDx() {
+		return dx;
+	}
+
+	/**
+	 * @return how far to move the paddle in y direction
+	 */
+	public double getDy() {
+		return dy;
+	}
+
+	/**
+	 * @return the sequence number or {@link #NO_SEQUENCE}
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the earlier of two timestamps from {@link System#nanoTime()},
+	 * which are compared by their difference as they may overflow
+	 */
+	static long earlier(long a, long b) {
+		return a - b < 0 ? a : b;
+	}
+}
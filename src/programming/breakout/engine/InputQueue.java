@@ -0,0 +1,87 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free queue of input events. Input is offered from any thread, e.g. the
+ * AWT event thread, and only applied by the engine at the start of a tick, so
+ * the paddle never moves in the middle of collision handling. Relative motion
+ * offered with {@link #offerMotion} is merged into a single event until the
+ * engine takes it.
+ */
+public class InputQueue {
+	private ConcurrentLinkedQueue<InputEvent> events =
+		new ConcurrentLinkedQueue<InputEvent>();
+	private AtomicReference<InputEvent> motion =
+		new AtomicReference<InputEvent>();
+
+	/**
+	 * Add an input event to the end of the queue
+	 */
+	public void offer(InputEvent event) {
+		events.offer(event);
+	}
+
+	/**
+	 * Add relative motion. It is added to the motion that has not been taken
+	 * yet, keeping the timestamp of the oldest.
+	 */
+	public void offerMotion(long timestamp, double dx, double dy) {
+		offerMotion(timestamp, dx, dy, InputEvent.NO_SEQUENCE);
+	}
+
+	/**
+	 * Add numbered relative motion. The merged motion keeps the highest
+	 * sequence number.
+	 */
+	public void offerMotion(long timestamp, double dx, double dy,
+	                        long sequence) {
+		InputEvent previous, merged;
+		do {
+			previous = motion.get();
+			merged = previous == null
+				? new InputEvent(timestamp, dx, dy, sequence)
+				: new InputEvent(InputEvent.earlier(previous.getTimestamp(), timestamp),
+				                 previous.getDx() + dx, previous.getDy() + dy,
+				                 Math.max(previous.getSequence(), sequence));
+		} while (!motion.compareAndSet(previous, merged));
+	}
+
+	/**
+	 * Remove the oldest input event from the queue. Merged motion comes after
+	 * all other events.
+	 * @return the event or {@code null} if the queue is empty
+	 */
+	public InputEvent poll() {
+		InputEvent event = events.poll();
+		return event != null ? event : motion.getAndSet(null);
+	}
+
+	/**
+	 * @return whether there are no events waiting
+	 */
+	public boolean isEmpty() {
+		return events.isEmpty() && motion.get() == null;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ints, without boxing them
+ */
+class IntList {
+	private int[] values = new int[8];
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	int get(int index) {
+		return values[index];
+	}
+
+	void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	/**
+	 * Remove the first occurrence of a value, keeping the order of the rest
+	 */
+	void removeValue(int value) {
+		for (int i = 0; i < size; i += 1) {
+			if (values[i] == value) {
+				System.arraycopy(values, i + 1, values, i, size - i - 1);
+				size -= 1;
+				return;
+			}
+		}
+	}
+
+	void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+/**
+ * How many bricks and balls a round starts with. The playing field grows to
+ * fit the bricks.
+ */
+public class Level {
+	/**
+	 * The level of the original game
+	 */
+	public static final Level DEFAULT =
+		new Level(Engine.NUMBER_OF_BRICK_ROWS, Engine.NUMBER_OF_BRICK_COLS, 1);
+
+	private final int rows, columns, balls;
+
+	/**
+	 * @param rows how many rows of bricks there are
+	 * @param columns how many bricks there are in a row
+	 * @param balls how many balls are in play
+	 */
+	public Level(int rows, int columns, int balls) {
+		if (rows < 0 || columns < 0 || balls < 1) {
+			throw new IllegalArgumentException("Invalid level " + rows + "x"
+			                                   + columns + ", " + balls + " balls");
+		}
+		this.rows = rows;
+		this.columns = columns;
+		this.balls = balls;
+	}
+
+	/**
+	 * Create a level with at least the given number of bricks, in about as
+	 * many rows as columns
+	 */
+	public static Level generate(int bricks, int balls) {
+		int columns = Math.max(1, (int) Math.ceil(Math.sqrt(bricks)));
+		int rows = (bricks + columns - 1) / columns;
+		return new Level(rows, columns, balls);
+	}
+
+	/**
+	 * @return how many rows of bricks there are
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return how many bricks there are in a row
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return how many bricks there are
+	 */
+	public int getBricks() {
+		return rows * columns;
+	}
+
+	/**
+	 * @return how many balls are in play
+	 */
+	public int getBalls() {
+		return balls;
+	}
+}
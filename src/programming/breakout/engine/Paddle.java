@@ -4,6 +4,13 @@ package programming.breakout.engine;
  * A paddle is the intersection of a rectangle and a circle
  */
 public class Paddle extends Rectangle {
+	/**
+	 * Radius, angle and offset of the center of the arc, computed again
+	 * whenever the paddle is resized
+	 */
+	private double radius;
+	private double angle;
+	private double arcCenterX;
 
 	/**
 	 * Creates a paddle in the given rectangle.
@@ -13,27 +20,61 @@ public class Paddle extends Rectangle {
 	 */
 	public Paddle(Vector2D position, double width, double height) {
 		super(position, width, height);
+		computeArc();
+	}
+
+	private void computeArc() {
+		double width = getWidth();
+		double height = getHeight();
+		radius = ((height * height) + (width * width / 4)) / (2 * height);
+		angle = Math.asin((width/2d) / radius) * 2d;
+		arcCenterX = width / 2;
+	}
+
+	@Override
+	void setWidth(double width) {
+		super.setWidth(width);
+		computeArc();
+	}
+
+	@Override
+	void setHeight(double height) {
+		super.setHeight(height);
+		computeArc();
 	}
 
 	/**
 	 * Get the radius of the underlying arc
 	 */
 	public double getRadius() {
-		return ((getHeight() * getHeight()) + (getWidth() * getWidth() / 4))
-			/ (2 * getHeight());
+		return radius;
 	}
 
 	/**
 	 * Get the center of the underlying arc
 	 */
 	public Vector2D getArcCenter() {
-		return getPosition().add(new Vector2D(getWidth()/2, getRadius()));
+		return new Vector2D(getArcCenterX(), getArcCenterY());
+	}
+
+	/**
+	 * Get the x coordinate of the center of the underlying arc
+	 */
+	public double getArcCenterX() {
+		return getX() + arcCenterX;
+	}
+
+	/**
+	 * Get the y coordinate of the center of the underlying arc
+	 */
+	public double getArcCenterY() {
+		return getY() + radius;
 	}
 
 	/**
 	 * Get the angle of the underlying arc
 	 */
 	public double getAngle() {
-		return Math.asin((getWidth()/2d) / getRadius()) * 2d;
+		return angle;
 	}
 }
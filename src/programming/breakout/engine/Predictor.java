@@ -0,0 +1,455 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Observable;
+import java.util.Observer;
+
+import programming.breakout.metrics.Metrics;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * Predicts a game running somewhere else, so local input shows without waiting
+ * for a round trip. The predicted game runs the same engine physics on a copy
+ * of the authoritative game and applies local paddle input immediately. Every
+ * input is numbered and sent on through {@link #getOutgoing()}. Whenever the
+ * authoritative game changes, the prediction for the last input it applied is
+ * compared with it. If they disagree the predicted game is reset to the
+ * authoritative one and all input not applied there yet is replayed.
+ */
+public class Predictor implements Observer, Runnable {
+	/**
+	 * How far the prediction may be off before it is corrected, in game units
+	 */
+	private static final double TOLERANCE = .25;
+
+	/**
+	 * How many ticks of unacknowledged input to keep at most
+	 */
+	private static final int MAX_HISTORY = 5000 / Engine.REFRESH_RATE;
+
+	/**
+	 * Copy of an authoritative entity, taken on the thread changing it
+	 */
+	private static class EntityCopy {
+		final Entity source;
+		final double x, y, vx, vy;
+		final double width, height;
+
+		EntityCopy(Entity source) {
+			this.source = source;
+			x = source.getX();
+			y = source.getY();
+			vx = source.getVelocity().getX0();
+			vy = source.getVelocity().getX1();
+			if (source instanceof Ball) {
+				width = height = ((Ball) source).getRadius();
+			} else {
+				width = ((Rectangle) source).getWidth();
+				height = ((Rectangle) source).getHeight();
+			}
+		}
+	}
+
+	/**
+	 * Copy of the authoritative game state
+	 */
+	private static class Frame {
+		final long inputSequence;
+		final EntityCopy ball;
+		final boolean ballMoving;
+		final boolean paused, gameOver;
+		final int score;
+		final double width, height, timeFactor;
+		final ArrayList<EntityCopy> entities = new ArrayList<EntityCopy>();
+
+		/**
+		 * @param previous the frame before or {@code null}
+		 */
+		Frame(GameState state, Frame previous) {
+			inputSequence = state.getInputSequence();
+			paused = state.isPaused();
+			gameOver = state.isGameOver();
+			score = state.getScore();
+			width = state.getWidth();
+			height = state.getHeight();
+			timeFactor = state.getTimeFactor();
+			EntityCopy ball = null;
+			for (Entity entity : state.getEntityList()) {
+				EntityCopy copy = new EntityCopy(entity);
+				entities.add(copy);
+				if (entity instanceof Ball) {
+					ball = copy;
+				}
+			}
+			this.ball = ball;
+
+			// The velocity of a ball waiting for the round to start is already
+			// set, only the position tells whether it moves
+			ballMoving = ball != null && previous != null
+				&& previous.ball != null && previous.ball.source == ball.source
+				&& (previous.ball.x != ball.x || previous.ball.y != ball.y);
+		}
+	}
+
+	/**
+	 * Input applied in a predicted tick and the prediction after it
+	 */
+	private static class PredictedTick {
+		final long sequence, timestamp;
+		final double dx, dy;
+		double paddleX, paddleY;
+		int paddles, balls, bricks;
+
+		/**
+		 * Ids and positions of the predicted balls
+		 */
+		int[] ballIds = new int[0];
+		double[] ballX = new double[0], ballY = new double[0];
+
+		PredictedTick(long sequence, long timestamp, double dx, double dy) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.dx = dx;
+			this.dy = dy;
+		}
+	}
+
+	private GameState authority;
+	private GameState predicted;
+	private Engine engine;
+	private InputQueue input;
+	private InputQueue outgoing = new InputQueue();
+
+	/**
+	 * Latest authoritative frame not reconciled yet
+	 */
+	private Frame latest;
+	private boolean snapshotPending;
+
+	/**
+	 * Last frame taken, only used by the thread changing the authoritative game
+	 */
+	private Frame previous;
+
+	/**
+	 * Ticks whose input was not acknowledged by the authoritative game yet
+	 */
+	private ArrayDeque<PredictedTick> history = new ArrayDeque<PredictedTick>();
+	private long sequence = InputEvent.NO_SEQUENCE;
+
+	/**
+	 * Predicted entities by the authoritative entity they copy
+	 */
+	private IdentityHashMap<Entity, Entity> copies =
+		new IdentityHashMap<Entity, Entity>();
+
+	/**
+	 * @param authority the mirror of the authoritative game
+	 * @param predicted the game state to predict the game in
+	 * @param input the queue to take local paddle input from
+	 */
+	public Predictor(GameState authority, GameState predicted,
+	                 InputQueue input) {
+		this.authority = authority;
+		this.predicted = predicted;
+		this.input = input;
+		this.engine = new Engine(predicted);
+		engine.follow(false);
+
+		authority.addObserver(this);
+	}
+
+	/**
+	 * @return the queue of numbered input to send to the authoritative game
+	 */
+	public InputQueue getOutgoing() {
+		return outgoing;
+	}
+
+	/**
+	 * Remember the authoritative game after it changed
+	 */
+	@Override
+	public void update(Observable observable, Object arg) {
+		Frame frame = new Frame(authority, previous);
+		previous = frame;
+		synchronized (this) {
+			latest = frame;
+			snapshotPending |= !(arg instanceof GameDelta);
+		}
+	}
+
+	/**
+	 * Predict the game until the program ends
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			long start = System.currentTimeMillis();
+
+			tick();
+
+			long elapsed = System.currentTimeMillis() - start;
+
+			try {
+				Thread.sleep(Math.max(0, Engine.REFRESH_RATE - elapsed));
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reconcile with the authoritative game, then advance the predicted game
+	 * by one tick using all local input since the last tick.
+	 */
+	public void tick() {
+		Frame frame;
+		boolean snapshot;
+		synchronized (this) {
+			frame = latest;
+			snapshot = snapshotPending;
+			latest = null;
+			snapshotPending = false;
+		}
+
+		if (frame != null) {
+			reconcile(frame, snapshot);
+		}
+
+		long timestamp = System.nanoTime();
+		double dx = 0, dy = 0;
+		InputEvent event;
+		while ((event = input.poll()) != null) {
+			timestamp = InputEvent.earlier(timestamp, event.getTimestamp());
+			dx += event.getDx();
+			dy += event.getDy();
+		}
+
+		// Numbered input is sent even without motion, so the acknowledgement
+		// keeps up with the ticks
+		PredictedTick tick = new PredictedTick(++sequence, timestamp, dx, dy);
+		outgoing.offerMotion(timestamp, dx, dy, sequence);
+		predict(tick);
+
+		history.addLast(tick);
+		if (history.size() > MAX_HISTORY) {
+			history.removeFirst();
+		}
+		Metrics.set("predictor.unacknowledged", history.size());
+	}
+
+	/**
+	 * Apply the input of a tick to the predicted game, advance it and remember
+	 * the prediction
+	 */
+	private void predict(PredictedTick tick) {
+		if (tick.dx != 0 || tick.dy != 0) {
+			engine.getInputQueue().offerMotion(tick.timestamp, tick.dx, tick.dy);
+		}
+		engine.tick();
+
+		ArrayList<Entity> entities = predicted.getEntityList();
+		tick.paddles = tick.balls = tick.bricks = 0;
+		tick.paddleX = tick.paddleY = Double.NaN;
+		for (Entity entity : entities) {
+			if (entity instanceof Paddle) {
+				tick.paddles += 1;
+				tick.paddleX = entity.getX();
+				tick.paddleY = entity.getY();
+			} else if (entity instanceof Ball) {
+				tick.balls += 1;
+			} else {
+				tick.bricks += 1;
+			}
+		}
+
+		if (tick.ballIds.length != tick.balls) {
+			tick.ballIds = new int[tick.balls];
+			tick.ballX = new double[tick.balls];
+			tick.ballY = new double[tick.balls];
+		}
+		int i = 0;
+		for (Entity entity : entities) {
+			if (entity instanceof Ball) {
+				tick.ballIds[i] = entity.getId();
+				tick.ballX[i] = entity.getX();
+				tick.ballY[i] = entity.getY();
+				i += 1;
+			}
+		}
+	}
+
+	/**
+	 * Compare the authoritative game with the prediction for the last input
+	 * it applied and correct the prediction if they disagree
+	 * @param snapshot whether the frame is the start of a new game, which is
+	 * never predicted
+	 */
+	private void reconcile(Frame frame, boolean snapshot) {
+		PredictedTick acknowledged = null;
+		Iterator<PredictedTick> it = history.iterator();
+		while (it.hasNext()) {
+			PredictedTick tick = it.next();
+			if (tick.sequence > frame.inputSequence) {
+				break;
+			}
+			acknowledged = tick;
+			it.remove();
+		}
+
+		predicted.setFlags(frame.paused, frame.gameOver);
+		predicted.setScore(frame.score);
+		predicted.setTimeFactor(frame.timeFactor);
+
+		if (!snapshot && acknowledged != null && agrees(acknowledged, frame)) {
+			return;
+		}
+
+		// Rewind to the authoritative game and replay what it has not seen yet.
+		// Observers only see the result with the next tick.
+		predicted.setHeld(true);
+		restore(frame, snapshot);
+		for (PredictedTick tick : history) {
+			predict(tick);
+		}
+		predicted.setHeld(false);
+
+		Metrics.increment("predictor.rewinds");
+		Metrics.add("predictor.replayedTicks", history.size());
+	}
+
+	/**
+	 * @return whether a prediction is close enough to the authoritative game
+	 */
+	private boolean agrees(PredictedTick tick, Frame frame) {
+		int paddles = 0, balls = 0, bricks = 0;
+		for (EntityCopy copy : frame.entities) {
+			if (copy.source instanceof Paddle) {
+				paddles += 1;
+				if (!close(copy.x, tick.paddleX) || !close(copy.y, tick.paddleY)) {
+					return false;
+				}
+			} else if (copy.source instanceof Ball) {
+				// Balls are matched by the predicted ball copying them
+				Entity ball = copies.get(copy.source);
+				int i = ball == null ? -1 : indexOf(tick.ballIds, ball.getId(),
+				                                    balls);
+				if (i < 0 || !close(copy.x, tick.ballX[i])
+				    || !close(copy.y, tick.ballY[i])) {
+					return false;
+				}
+				balls += 1;
+			} else {
+				bricks += 1;
+			}
+		}
+		return paddles == tick.paddles && balls == tick.balls
+			&& bricks == tick.bricks;
+	}
+
+	/**
+	 * Find an id, looking where it is expected first
+	 *
+	 * @return the index of the id or -1 if it is missing
+	 */
+	private static int indexOf(int[] ids, int id, int expected) {
+		if (expected < ids.length && ids[expected] == id) {
+			return expected;
+		}
+		for (int i = 0; i < ids.length; i += 1) {
+			if (ids[i] == id) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean close(double authoritative, double prediction) {
+		return Math.abs(authoritative - prediction) <= TOLERANCE;
+	}
+
+	/**
+	 * Make the predicted game a copy of the authoritative game
+	 */
+	private void restore(Frame frame, boolean snapshot) {
+		predicted.setWidth(frame.width);
+		predicted.setHeight(frame.height);
+
+		IdentityHashMap<Entity, Entity> present =
+			new IdentityHashMap<Entity, Entity>();
+		for (EntityCopy copy : frame.entities) {
+			Entity entity = copies.get(copy.source);
+			if (entity == null) {
+				entity = create(copy);
+			}
+			present.put(copy.source, entity);
+		}
+
+		HashSet<Entity> listed =
+			new HashSet<Entity>(predicted.getEntityList());
+		HashSet<Entity> kept = new HashSet<Entity>(present.values());
+		for (Entity entity : listed) {
+			if (!kept.contains(entity)) {
+				predicted.remove(entity);
+			}
+		}
+
+		for (EntityCopy copy : frame.entities) {
+			Entity entity = present.get(copy.source);
+			entity.setPosition(new Vector2D(copy.x, copy.y));
+			entity.setVelocity(new Vector2D(copy.vx, copy.vy));
+			if (listed.contains(entity)) {
+				predicted.addMoved(entity);
+			} else {
+				predicted.add(entity);
+			}
+		}
+
+		copies = present;
+		engine.follow(frame.ballMoving);
+
+		if (snapshot) {
+			predicted.endTick(false);
+		}
+	}
+
+	/**
+	 * Create a predicted entity copying an authoritative one
+	 */
+	private static Entity create(EntityCopy copy) {
+		Vector2D position = new Vector2D(copy.x, copy.y);
+		if (copy.source instanceof Ball) {
+			return new Ball(position, copy.width);
+		} else if (copy.source instanceof Paddle) {
+			return new Paddle(position, copy.width, copy.height);
+		} else {
+			return new Rectangle(position, copy.width, copy.height);
+		}
+	}
+}
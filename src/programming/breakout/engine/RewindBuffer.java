@@ -0,0 +1,286 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Observable;
+import java.util.Observer;
+
+import programming.breakout.metrics.Metrics;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * Records the last seconds of a game, so they can be rewound and stepped
+ * through, e.g. to find out how a ball got stuck. Every tick is encoded with a
+ * {@link StateEncoder}, as a snapshot once every {@link #KEYFRAME_INTERVAL}
+ * ticks and as a delta otherwise. The messages are kept in a ring of fixed
+ * size and the oldest second is dropped when it is full, so the memory used
+ * does not grow however long the game runs.
+ *
+ * Rewound ticks are decoded into a separate game state, which can be shown
+ * like any other.
+ */
+public class RewindBuffer implements Observer {
+	/**
+	 * Ticks from one snapshot to the next, a second
+	 */
+	public static final int KEYFRAME_INTERVAL = 1000 / Engine.REFRESH_RATE;
+
+	private GameState recorded;
+	private GameState replay;
+	private StateEncoder encoder = new StateEncoder();
+
+	/**
+	 * The messages, one after another and wrapping around at the end
+	 */
+	private byte[] data;
+	private int dataStart, dataUsed;
+
+	/**
+	 * Where the message of every tick is, indexed from {@link #first} and
+	 * wrapping around
+	 */
+	private int[] offsets, lengths;
+	private boolean[] keyframes;
+	private int first, count, keyframeCount;
+	private int sinceKeyframe;
+
+	/**
+	 * Number of the oldest tick held, ticks are counted from the start of the
+	 * recording
+	 */
+	private long firstTick;
+	private long nextTick;
+
+	private StateDecoder decoder;
+	private long replayTick = -1;
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * @param recorded the game to record
+	 * @param replay the game state to decode rewound ticks into
+	 * @param seconds how many seconds to hold at least
+	 * @param maxBytes how many bytes the messages may take, older seconds are
+	 *        dropped earlier if they do not fit
+	 */
+	public RewindBuffer(GameState recorded, GameState replay, double seconds,
+	                    int maxBytes) {
+		this.recorded = recorded;
+		this.replay = replay;
+
+		// Room for a second more, as a whole second is dropped at once
+		int ticks = (int) Math.ceil(seconds * 1000 / Engine.REFRESH_RATE)
+			+ KEYFRAME_INTERVAL;
+		data = new byte[maxBytes];
+		offsets = new int[ticks];
+		lengths = new int[ticks];
+		keyframes = new boolean[ticks];
+
+		recorded.addObserver(this);
+	}
+
+	/**
+	 * Record a tick
+	 */
+	@Override
+	public synchronized void update(Observable observable, Object arg) {
+		long tick = nextTick++;
+		boolean keyframe = !(arg instanceof GameDelta) || count == 0 ||
+			sinceKeyframe >= KEYFRAME_INTERVAL - 1;
+		byte[] message = keyframe
+			? encoder.snapshot(recorded)
+			: encoder.delta(recorded, (GameDelta) arg);
+
+		// Make room by dropping the oldest seconds
+		while (count == offsets.length ||
+		       dataUsed + message.length > data.length) {
+			if (count == 0) {
+				// Does not fit at all, try again with the next tick
+				Metrics.increment("rewind.dropped");
+				return;
+			}
+			if (!keyframe && keyframeCount == 1) {
+				// The delta depends on the snapshot that is about to be dropped
+				message = encoder.snapshot(recorded);
+				keyframe = true;
+			}
+			dropOldestSecond();
+		}
+
+		append(message, keyframe, tick);
+		sinceKeyframe = keyframe ? 0 : sinceKeyframe + 1;
+
+		Metrics.set("rewind.bytes", dataUsed);
+		Metrics.set("rewind.seconds", getSeconds());
+	}
+
+	/**
+	 * @return the number of the oldest tick that can be rewound to
+	 */
+	public synchronized long getOldestTick() {
+		return firstTick;
+	}
+
+	/**
+	 * @return the number of the last tick recorded
+	 */
+	public synchronized long getNewestTick() {
+		return firstTick + count - 1;
+	}
+
+	/**
+	 * @return how many seconds of the game are held
+	 */
+	public synchronized double getSeconds() {
+		return count * Engine.REFRESH_RATE / 1000d;
+	}
+
+	/**
+	 * @return how many bytes the held messages take
+	 */
+	public synchronized int getBytes() {
+		return dataUsed;
+	}
+
+	/**
+	 * @return the tick the replayed game state shows or -1 if none
+	 */
+	public synchronized long getReplayTick() {
+		return replayTick;
+	}
+
+	/**
+	 * Show a tick in the replayed game state. At most the ticks since the last
+	 * snapshot are decoded.
+	 *
+	 * @return whether the tick is held
+	 */
+	public synchronized boolean seek(long tick) {
+		if (tick < firstTick || tick >= firstTick + count) {
+			return false;
+		}
+
+		int index = (int) (tick - firstTick);
+		int keyframe = index;
+		while (!keyframes[slot(keyframe)]) {
+			keyframe -= 1;
+		}
+
+		// Continue from the tick shown, if that is not more work
+		int start;
+		if (decoder != null && replayTick >= firstTick + keyframe &&
+		    replayTick <= tick) {
+			start = (int) (replayTick - firstTick) + 1;
+		} else {
+			decoder = new StateDecoder(replay);
+			start = keyframe;
+		}
+
+		// Only show the tick seeked to
+		replay.setHeld(true);
+		for (int i = start; i <= index; i += 1) {
+			decode(i);
+		}
+		replay.setHeld(false);
+		replay.endTick();
+
+		replayTick = tick;
+		return true;
+	}
+
+	/**
+	 * Move the replayed game state forward or backward
+	 *
+	 * @param ticks how many ticks to move, negative to move backward
+	 * @return whether the tick moved to is held
+	 */
+	public synchronized boolean step(int ticks) {
+		return seek(replayTick + ticks);
+	}
+
+	/**
+	 * @return the index into the arrays of an entry, counted from the oldest
+	 */
+	private int slot(int index) {
+		return (first + index) % offsets.length;
+	}
+
+	private void append(byte[] message, boolean keyframe, long tick) {
+		if (count == 0) {
+			firstTick = tick;
+		}
+
+		int offset = (dataStart + dataUsed) % data.length;
+		int tail = Math.min(message.length, data.length - offset);
+		System.arraycopy(message, 0, data, offset, tail);
+		System.arraycopy(message, tail, data, 0, message.length - tail);
+		dataUsed += message.length;
+
+		int slot = slot(count);
+		offsets[slot] = offset;
+		lengths[slot] = message.length;
+		keyframes[slot] = keyframe;
+		count += 1;
+		if (keyframe) {
+			keyframeCount += 1;
+		}
+	}
+
+	/**
+	 * Drop the oldest snapshot and the deltas depending on it
+	 */
+	private void dropOldestSecond() {
+		do {
+			if (keyframes[first]) {
+				keyframeCount -= 1;
+			}
+			dataStart = (dataStart + lengths[first]) % data.length;
+			dataUsed -= lengths[first];
+			first = (first + 1) % offsets.length;
+			count -= 1;
+			firstTick += 1;
+		} while (count > 0 && !keyframes[first]);
+
+		if (count == 0) {
+			dataStart = 0;
+		}
+	}
+
+	/**
+	 * Apply the message of an entry to the replayed game state
+	 */
+	private void decode(int index) {
+		int slot = slot(index);
+		int length = lengths[slot];
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+
+		int tail = Math.min(length, data.length - offsets[slot]);
+		System.arraycopy(data, offsets[slot], scratch, 0, tail);
+		System.arraycopy(data, 0, scratch, tail, length - tail);
+
+		ByteBuffer message = ByteBuffer.wrap(scratch, 0, length);
+		Varint.read(message);
+		decoder.apply(message);
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static programming.breakout.engine.StateEncoder.POSITION_QUANTUM;
+import static programming.breakout.engine.StateEncoder.VELOCITY_QUANTUM;
+import static programming.breakout.engine.StateEncoder.MOTION_QUANTUM;
+
+/**
+ * Applies messages created by a {@link StateEncoder} to a game state, which then
+ * mirrors the encoded game. Observers of the mirror are notified once for every
+ * message, just like observers of the original game are notified once a tick.
+ */
+public class StateDecoder {
+	private GameState state;
+
+	/**
+	 * Mapping of the ids of the original entities to the mirrored entities
+	 */
+	private HashMap<Integer, Entity> entities = new HashMap<Integer, Entity>();
+
+	/**
+	 * Quantized position and velocity of every entity as last decoded
+	 */
+	private HashMap<Integer, long[]> baseline = new HashMap<Integer, long[]>();
+
+	/**
+	 * Ids of the bricks by their slot
+	 */
+	private HashMap<Long, Integer> brickSlots = new HashMap<Long, Integer>();
+
+	/**
+	 * @param state the game state to mirror the game in
+	 */
+	public StateDecoder(GameState state) {
+		this.state = state;
+	}
+
+	/**
+	 * Apply a message to the mirrored state
+	 * @param message the message without its length
+	 * @return the type of the message
+	 */
+	public byte apply(ByteBuffer message) {
+		byte type = message.get();
+
+		switch (type) {
+		case StateEncoder.SNAPSHOT:
+			applySnapshot(message);
+			break;
+		case StateEncoder.DELTA:
+			applyDelta(message);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown message type " + type);
+		}
+
+		return type;
+	}
+
+	/**
+	 * Read relative paddle motion sent by a client
+	 * @param message the message without its length and type
+	 */
+	public static InputEvent readMotion(ByteBuffer message) {
+		return new InputEvent(System.nanoTime(),
+		                      Varint.readSigned(message)*MOTION_QUANTUM,
+		                      Varint.readSigned(message)*MOTION_QUANTUM,
+		                      Varint.read(message));
+	}
+
+	private void applySnapshot(ByteBuffer message) {
+		state.setWidth(message.getDouble());
+		state.setHeight(message.getDouble());
+		readFlags(message);
+		state.setScore((int) Varint.readSigned(message));
+
+		ArrayList<Entity> list = state.getEntityList();
+		list.clear();
+		entities.clear();
+		baseline.clear();
+		brickSlots.clear();
+		list.addAll(readEntities(message));
+
+		state.endTick(false);
+	}
+
+	private void applyDelta(ByteBuffer message) {
+		readFlags(message);
+		state.setScore(state.getScore() + (int) Varint.readSigned(message));
+
+		long moved = Varint.read(message);
+		for (long i = 0; i < moved; i += 1) {
+			long idAndFlag = Varint.read(message);
+			int id = (int) (idAndFlag >>> 1);
+
+			long[] last = baseline.get(id);
+			long[] now = last == null ? new long[4] : last.clone();
+			now[0] += Varint.readSigned(message);
+			now[1] += Varint.readSigned(message);
+			if ((idAndFlag & 1) != 0) {
+				now[2] = Varint.readSigned(message);
+				now[3] = Varint.readSigned(message);
+			}
+			baseline.put(id, now);
+
+			Entity entity = entities.get(id);
+			if (entity != null) {
+				setState(entity, now);
+				state.addMoved(entity);
+			}
+		}
+
+		long bricks = Varint.read(message);
+		for (long i = 0; i < bricks; i += 1) {
+			Integer id = brickSlots.remove(Varint.read(message));
+			if (id != null) {
+				destroy(id);
+			}
+		}
+
+		long others = Varint.read(message);
+		for (long i = 0; i < others; i += 1) {
+			destroy((int) Varint.read(message));
+		}
+
+		for (Entity entity : readEntities(message)) {
+			state.add(entity);
+		}
+
+		state.endTick();
+	}
+
+	private void destroy(int id) {
+		baseline.remove(id);
+		Entity entity = entities.remove(id);
+		if (entity != null) {
+			state.remove(entity);
+		}
+	}
+
+	private void readFlags(ByteBuffer message) {
+		int flags = message.get();
+		state.setFlags((flags & StateEncoder.PAUSED) != 0,
+		               (flags & StateEncoder.GAME_OVER) != 0);
+		if ((flags & StateEncoder.TIME_FACTOR) != 0) {
+			state.setTimeFactor(message.getDouble());
+		}
+		if ((flags & StateEncoder.INPUT_SEQUENCE) != 0) {
+			state.setInputSequence(Varint.read(message));
+		}
+	}
+
+	private ArrayList<Entity> readEntities(ByteBuffer message) {
+		int count = (int) Varint.read(message);
+		ArrayList<Entity> result = new ArrayList<Entity>(count);
+
+		for (int i = 0; i < count; i += 1) {
+			byte type = message.get();
+			int id = (int) Varint.read(message);
+			long[] now = new long[4];
+			now[0] = Varint.readSigned(message);
+			now[1] = Varint.readSigned(message);
+			Entity entity;
+
+			switch (type) {
+			case StateEncoder.BALL:
+				Ball ball = new Ball(new Vector2D(0, 0),
+				                     Varint.read(message)*POSITION_QUANTUM);
+				now[2] = Varint.readSigned(message);
+				now[3] = Varint.readSigned(message);
+				entity = ball;
+				break;
+			case StateEncoder.PADDLE:
+				entity = new Paddle(new Vector2D(0, 0),
+				                    Varint.read(message)*POSITION_QUANTUM,
+				                    Varint.read(message)*POSITION_QUANTUM);
+				break;
+			case StateEncoder.BRICK:
+				entity = new Rectangle(new Vector2D(0, 0),
+				                       Varint.read(message)*POSITION_QUANTUM,
+				                       Varint.read(message)*POSITION_QUANTUM);
+				brickSlots.put(Varint.read(message), id);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown entity type " + type);
+			}
+
+			setState(entity, now);
+			baseline.put(id, now);
+			entities.put(id, entity);
+			result.add(entity);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Set position and velocity of an entity from their quantized values
+	 */
+	private static void setState(Entity entity, long[] quantized) {
+		entity.setPosition(new Vector2D(quantized[0]*POSITION_QUANTUM,
+		                                quantized[1]*POSITION_QUANTUM));
+		entity.setVelocity(new Vector2D(quantized[2]*VELOCITY_QUANTUM,
+		                                quantized[3]*VELOCITY_QUANTUM));
+	}
+}
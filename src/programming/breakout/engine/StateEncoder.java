@@ -0,0 +1,296 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * Encodes the game state and its deltas as messages that can be sent to
+ * another program, where a {@link StateDecoder} applies them to a mirror of
+ * the game state. Every message starts with its length as a {@link Varint},
+ * followed by its type.
+ *
+ * Positions are quantized to {@link #POSITION_QUANTUM} game units. Deltas only
+ * contain how far a moved entity moved since the last message and its velocity
+ * if it changed, destroyed bricks are sent as their slot, a small index given
+ * to every brick. Messages therefore depend on all messages since the last
+ * snapshot and must be applied in order.
+ *
+ * A snapshot does not change what following deltas are relative to, so
+ * receivers of a snapshot and receivers of the deltas of the same tick stay in
+ * sync. If both are encoded for the same tick, the delta has to be encoded
+ * first.
+ */
+public class StateEncoder {
+	/**
+	 * Message types
+	 */
+	public static final byte SNAPSHOT = 1;
+	public static final byte DELTA = 2;
+	public static final byte MOTION = 3;
+
+	/**
+	 * Entity types
+	 */
+	static final byte BRICK = 0;
+	static final byte BALL = 1;
+	static final byte PADDLE = 2;
+
+	/**
+	 * Flags of the game state
+	 */
+	static final int PAUSED = 1;
+	static final int GAME_OVER = 2;
+	static final int TIME_FACTOR = 4;
+	static final int INPUT_SEQUENCE = 8;
+
+	/**
+	 * Resolution of positions and sizes in game units
+	 */
+	static final double POSITION_QUANTUM = 1/64d;
+
+	/**
+	 * Resolution of velocities in game units per tick
+	 */
+	static final double VELOCITY_QUANTUM = 1/4096d;
+
+	/**
+	 * Resolution of paddle motion sent by clients
+	 */
+	static final double MOTION_QUANTUM = 1/1024d;
+
+	/**
+	 * Quantized position and velocity of every entity as last encoded
+	 */
+	private HashMap<Integer, long[]> baseline = new HashMap<Integer, long[]>();
+
+	/**
+	 * Slot of every brick, by its id
+	 */
+	private HashMap<Integer, Integer> brickSlots = new HashMap<Integer, Integer>();
+	private int nextBrickSlot = 0;
+
+	private double timeFactor = Double.NaN;
+	private long inputSequence = InputEvent.NO_SEQUENCE;
+
+	/**
+	 * Encode the complete state of the game
+	 */
+	public byte[] snapshot(GameState state) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		// Forget entities that are gone, but keep the slots of remaining bricks
+		HashSet<Integer> present = new HashSet<Integer>();
+		for (Entity entity : state.getEntityList()) {
+			present.add(entity.getId());
+		}
+		baseline.keySet().retainAll(present);
+		brickSlots.keySet().retainAll(present);
+		if (brickSlots.isEmpty()) {
+			nextBrickSlot = 0;
+		}
+
+		out.write(SNAPSHOT);
+		writeDouble(out, state.getWidth());
+		writeDouble(out, state.getHeight());
+		writeFlags(out, state, true);
+		Varint.writeSigned(out, state.getScore());
+		writeEntities(out, state.getEntityList());
+
+		return finish(out);
+	}
+
+	/**
+	 * Encode what changed in a tick
+	 */
+	public byte[] delta(GameState state, GameDelta delta) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		out.write(DELTA);
+		writeFlags(out, state, false);
+		Varint.writeSigned(out, delta.scoreDelta);
+
+		Varint.write(out, delta.entitiesMoved.size());
+		for (Entity entity : delta.entitiesMoved) {
+			long[] last = baseline.get(entity.getId());
+			long[] now = quantize(entity);
+			if (last == null) {
+				last = new long[4];
+			}
+
+			// Lowest bit of the id tells whether the velocity follows
+			boolean velocityChanged = now[2] != last[2] || now[3] != last[3];
+			Varint.write(out, ((long) entity.getId() << 1)
+			             | (velocityChanged ? 1 : 0));
+			Varint.writeSigned(out, now[0] - last[0]);
+			Varint.writeSigned(out, now[1] - last[1]);
+			if (velocityChanged) {
+				Varint.writeSigned(out, now[2]);
+				Varint.writeSigned(out, now[3]);
+			}
+
+			baseline.put(entity.getId(), now);
+		}
+
+		// Destroyed bricks are sent as their slot, everything else by its id
+		ArrayList<Integer> slots = new ArrayList<Integer>();
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		for (Entity entity : delta.entitiesDestroyed) {
+			Integer slot = brickSlots.remove(entity.getId());
+			baseline.remove(entity.getId());
+			if (slot != null) {
+				slots.add(slot);
+			} else {
+				ids.add(entity.getId());
+			}
+		}
+
+		Varint.write(out, slots.size());
+		for (int slot : slots) {
+			Varint.write(out, slot);
+		}
+
+		Varint.write(out, ids.size());
+		for (int id : ids) {
+			Varint.write(out, id);
+		}
+
+		writeEntities(out, delta.entitiesAdded);
+
+		return finish(out);
+	}
+
+	/**
+	 * Encode relative paddle motion sent from a client
+	 */
+	public static byte[] motion(InputEvent event) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		out.write(MOTION);
+		Varint.writeSigned(out, Math.round(event.getDx()/MOTION_QUANTUM));
+		Varint.writeSigned(out, Math.round(event.getDy()/MOTION_QUANTUM));
+		Varint.write(out, event.getSequence());
+
+		return finish(out);
+	}
+
+	/**
+	 * Quantize position and velocity of an entity
+	 */
+	static long[] quantize(Entity entity) {
+		return new long[] {
+			Math.round(entity.getX()/POSITION_QUANTUM),
+			Math.round(entity.getY()/POSITION_QUANTUM),
+			Math.round(entity.getVelocity().getX0()/VELOCITY_QUANTUM),
+			Math.round(entity.getVelocity().getX1()/VELOCITY_QUANTUM)
+		};
+	}
+
+	private void writeFlags(ByteArrayOutputStream out, GameState state,
+	                        boolean snapshot) {
+		boolean timeFactorChanged =
+			snapshot || state.getTimeFactor() != timeFactor;
+		boolean inputSequenceChanged =
+			snapshot || state.getInputSequence() != inputSequence;
+
+		out.write((state.isPaused() ? PAUSED : 0)
+		          | (state.isGameOver() ? GAME_OVER : 0)
+		          | (timeFactorChanged ? TIME_FACTOR : 0)
+		          | (inputSequenceChanged ? INPUT_SEQUENCE : 0));
+
+		if (timeFactorChanged) {
+			timeFactor = state.getTimeFactor();
+			writeDouble(out, timeFactor);
+		}
+
+		// Lets the client tell which of its input the server has applied
+		if (inputSequenceChanged) {
+			inputSequence = state.getInputSequence();
+			Varint.write(out, inputSequence);
+		}
+	}
+
+	private void writeEntities(ByteArrayOutputStream out,
+	                           Collection<Entity> entities) {
+		Varint.write(out, entities.size());
+		for (Entity entity : entities) {
+			long[] now = quantize(entity);
+
+			if (entity instanceof Ball) {
+				Ball ball = (Ball) entity;
+				out.write(BALL);
+				Varint.write(out, ball.getId());
+				Varint.writeSigned(out, now[0]);
+				Varint.writeSigned(out, now[1]);
+				Varint.write(out, Math.round(ball.getRadius()/POSITION_QUANTUM));
+				Varint.writeSigned(out, now[2]);
+				Varint.writeSigned(out, now[3]);
+			} else if (entity instanceof Rectangle) {
+				Rectangle rect = (Rectangle) entity;
+				out.write(rect instanceof Paddle ? PADDLE : BRICK);
+				Varint.write(out, rect.getId());
+				Varint.writeSigned(out, now[0]);
+				Varint.writeSigned(out, now[1]);
+				Varint.write(out, Math.round(rect.getWidth()/POSITION_QUANTUM));
+				Varint.write(out, Math.round(rect.getHeight()/POSITION_QUANTUM));
+
+				if (!(rect instanceof Paddle)) {
+					Integer slot = brickSlots.get(rect.getId());
+					if (slot == null) {
+						slot = nextBrickSlot++;
+						brickSlots.put(rect.getId(), slot);
+					}
+					Varint.write(out, slot);
+				}
+			} else {
+				throw new IllegalArgumentException("I don't know how to encode a "
+				                                   + entity.getClass());
+			}
+
+			baseline.put(entity.getId(), now);
+		}
+	}
+
+	private static void writeDouble(ByteArrayOutputStream out, double value) {
+		long bits = Double.doubleToLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			out.write((int) (bits >>> shift));
+		}
+	}
+
+	/**
+	 * Put the length in front of the message
+	 */
+	private static byte[] finish(ByteArrayOutputStream out) {
+		byte[] body = out.toByteArray();
+		ByteArrayOutputStream message =
+			new ByteArrayOutputStream(body.length + Varint.size(body.length));
+		Varint.write(message, body.length);
+		message.write(body, 0, body.length);
+		return message.toByteArray();
+	}
+}
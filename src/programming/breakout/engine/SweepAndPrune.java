@@ -0,0 +1,333 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+import programming.breakout.metrics.Metrics;
+
+/**
+ * Broad phase finding the bricks each ball could touch during a tick. The
+ * intervals the balls and bricks cover on the x axis are kept sorted and swept
+ * once, so only pairs overlapping on the x axis are looked at. Added intervals
+ * are sorted in at once. As things move little between ticks, the order
+ * barely changes otherwise and is restored with an insertion sort.
+ */
+class SweepAndPrune {
+	/**
+	 * How many updates to count before adding to the metrics
+	 */
+	private static final int METRICS_INTERVAL = 64;
+
+	/**
+	 * A ball or brick in the broad phase
+	 */
+	private static class Proxy {
+		final Ball ball;
+		/**
+		 * Row of the brick in the {@link BrickTable}, if this is not a ball
+		 */
+		final int brick;
+		double minX, maxX, minY, maxY;
+		boolean removed;
+		final IntList candidates;
+		/**
+		 * Index in the list of open intervals during a sweep
+		 */
+		int active;
+
+		Proxy(Ball ball, int brick) {
+			this.ball = ball;
+			this.brick = brick;
+			candidates = ball != null ? new IntList() : null;
+		}
+	}
+
+	/**
+	 * The start or end of an interval on the x axis
+	 */
+	private static class Endpoint {
+		final Proxy proxy;
+		final boolean min;
+
+		Endpoint(Proxy proxy, boolean min) {
+			this.proxy = proxy;
+			this.min = min;
+		}
+
+		double getValue() {
+			return min ? proxy.minX : proxy.maxX;
+		}
+	}
+
+	private IdentityHashMap<Ball, Proxy> balls =
+		new IdentityHashMap<Ball, Proxy>();
+	private ArrayList<Proxy> bricks = new ArrayList<Proxy>();
+	private int brickCount;
+	/**
+	 * Starts sort before ends at the same position, so touching intervals
+	 * overlap
+	 */
+	private static final Comparator<Endpoint> ORDER =
+		new Comparator<Endpoint>() {
+			@Override
+			public int compare(Endpoint a, Endpoint b) {
+				return before(a, b) ? -1 : before(b, a) ? 1 : 0;
+			}
+		};
+
+	private Endpoint[] endpoints = new Endpoint[16];
+	private int endpointCount;
+	private boolean removed = false;
+	private boolean added = false;
+
+	private ArrayList<Proxy> activeBalls = new ArrayList<Proxy>();
+	private ArrayList<Proxy> activeBricks = new ArrayList<Proxy>();
+
+	private int updates;
+	private long pairs, allPairs;
+
+	/**
+	 * Remove all balls and bricks
+	 */
+	void clear() {
+		balls.clear();
+		bricks.clear();
+		brickCount = 0;
+		Arrays.fill(endpoints, 0, endpointCount, null);
+		endpointCount = 0;
+		removed = false;
+		added = false;
+	}
+
+	/**
+	 * Add all bricks of a table. Bricks are assumed not to move.
+	 */
+	void add(BrickTable table) {
+		for (int i = bricks.size(); i < table.size(); i += 1) {
+			Proxy proxy = new Proxy(null, i);
+			proxy.minX = table.getX(i);
+			proxy.maxX = table.getX(i) + table.getWidth(i);
+			proxy.minY = table.getY(i);
+			proxy.maxY = table.getY(i) + table.getHeight(i);
+			bricks.add(proxy);
+			if (table.isAlive(i)) {
+				brickCount += 1;
+				insert(proxy);
+			} else {
+				proxy.removed = true;
+			}
+		}
+	}
+
+	/**
+	 * Add a ball. Its interval is taken when updating.
+	 */
+	void add(Ball ball) {
+		Proxy proxy = new Proxy(ball, -1);
+		proxy.minX = proxy.maxX = ball.getX();
+		balls.put(ball, proxy);
+		insert(proxy);
+	}
+
+	/**
+	 * Remove a ball
+	 */
+	void remove(Ball ball) {
+		Proxy proxy = balls.remove(ball);
+		if (proxy != null) {
+			remove(proxy);
+		}
+	}
+
+	/**
+	 * Remove a brick, also from the candidates of all balls
+	 *
+	 * @param brick the row of the brick in the table
+	 */
+	void remove(int brick) {
+		if (brick >= bricks.size() || bricks.get(brick).removed) {
+			return;
+		}
+
+		remove(bricks.get(brick));
+		brickCount -= 1;
+		for (Proxy ball : balls.values()) {
+			ball.candidates.removeValue(brick);
+		}
+	}
+
+	private void remove(Proxy proxy) {
+		proxy.removed = true;
+		// Endpoints are dropped with the next update
+		removed = true;
+	}
+
+	/**
+	 * Find the bricks each ball could touch before the end of the tick
+	 *
+	 * @param timeFactor how far the balls move in a tick, relative to their
+	 *        velocity
+	 */
+	void update(double timeFactor) {
+		for (Proxy proxy : balls.values()) {
+			Ball ball = proxy.ball;
+			// The ball can move its whole step in any direction after a bounce
+			// and be pushed out of something by up to its radius
+			double reach = ball.getVelocity().getMagnitude() * timeFactor
+				+ ball.getRadius();
+			proxy.minX = ball.getX() - reach;
+			proxy.maxX = ball.getX() + 2 * ball.getRadius() + reach;
+			proxy.minY = ball.getY() - reach;
+			proxy.maxY = ball.getY() + 2 * ball.getRadius() + reach;
+			proxy.candidates.clear();
+		}
+
+		if (removed) {
+			dropRemoved();
+		}
+		if (added) {
+			Arrays.sort(endpoints, 0, endpointCount, ORDER);
+			added = false;
+		} else {
+			sort();
+		}
+		sweep();
+
+		allPairs += (long) balls.size() * brickCount;
+		if (++updates >= METRICS_INTERVAL) {
+			flushMetrics();
+		}
+	}
+
+	/**
+	 * @return the rows of the bricks the ball could touch this tick, as found
+	 *         by the last update
+	 */
+	IntList getCandidates(Ball ball) {
+		return balls.get(ball).candidates;
+	}
+
+	private void insert(Proxy proxy) {
+		if (endpointCount + 2 > endpoints.length) {
+			endpoints = Arrays.copyOf(endpoints, endpoints.length*2);
+		}
+		endpoints[endpointCount++] = new Endpoint(proxy, true);
+		endpoints[endpointCount++] = new Endpoint(proxy, false);
+		// Sorted in at once with the next update, instead of one by one
+		added = true;
+	}
+
+	private void dropRemoved() {
+		int size = 0;
+		for (int i = 0; i < endpointCount; i += 1) {
+			Endpoint endpoint = endpoints[i];
+			if (!endpoint.proxy.removed) {
+				endpoints[size++] = endpoint;
+			}
+		}
+		Arrays.fill(endpoints, size, endpointCount, null);
+		endpointCount = size;
+		removed = false;
+	}
+
+	/**
+	 * Insertion sort, which is close to linear as the order changes little
+	 * between updates
+	 */
+	private void sort() {
+		for (int i = 1; i < endpointCount; i += 1) {
+			Endpoint endpoint = endpoints[i];
+			int j = i;
+			while (j > 0 && before(endpoint, endpoints[j - 1])) {
+				endpoints[j] = endpoints[j - 1];
+				j -= 1;
+			}
+			endpoints[j] = endpoint;
+		}
+	}
+
+	private static boolean before(Endpoint a, Endpoint b) {
+		double value = a.getValue(), other = b.getValue();
+		return value < other || (value == other && a.min && !b.min);
+	}
+
+	/**
+	 * Walk along the x axis, pairing every ball with the bricks whose
+	 * intervals are open at the same time and that overlap on the y axis too
+	 */
+	private void sweep() {
+		activeBalls.clear();
+		activeBricks.clear();
+		for (int i = 0; i < endpointCount; i += 1) {
+			Endpoint endpoint = endpoints[i];
+			Proxy proxy = endpoint.proxy;
+			if (!endpoint.min) {
+				deactivate(proxy.ball != null ? activeBalls : activeBricks, proxy);
+			} else if (proxy.ball != null) {
+				for (int j = 0; j < activeBricks.size(); j += 1) {
+					pair(proxy, activeBricks.get(j));
+				}
+				activate(activeBalls, proxy);
+			} else {
+				for (int j = 0; j < activeBalls.size(); j += 1) {
+					pair(activeBalls.get(j), proxy);
+				}
+				activate(activeBricks, proxy);
+			}
+		}
+	}
+
+	private static void activate(ArrayList<Proxy> active, Proxy proxy) {
+		proxy.active = active.size();
+		active.add(proxy);
+	}
+
+	/**
+	 * Remove an interval from the open ones by moving the last one into its
+	 * place
+	 */
+	private static void deactivate(ArrayList<Proxy> active, Proxy proxy) {
+		Proxy last = active.remove(active.size() - 1);
+		if (last != proxy) {
+			active.set(proxy.active, last);
+			last.active = proxy.active;
+		}
+	}
+
+	private void pair(Proxy ball, Proxy brick) {
+		if (ball.minY <= brick.maxY && ball.maxY >= brick.minY) {
+			ball.candidates.add(brick.brick);
+			pairs += 1;
+		}
+	}
+
+	private void flushMetrics() {
+		Metrics.add("engine.broadPhasePairs", pairs);
+		Metrics.add("engine.broadPhaseAllPairs", allPairs);
+		updates = 0;
+		pairs = 0;
+		allPairs = 0;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length encoding of integers. Every byte holds seven bits of the
+ * number, the highest bit tells whether another byte follows. Signed numbers
+ * are zigzag encoded first, so that small negative numbers stay short too.
+ */
+public class Varint {
+
+	/**
+	 * Returned by {@link #tryRead} if the buffer does not hold a whole number
+	 */
+	public static final long INCOMPLETE = Long.MIN_VALUE;
+
+	private Varint() {}
+
+	/**
+	 * Write a non-negative number
+	 */
+	public static void write(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Write a number that may be negative
+	 */
+	public static void writeSigned(ByteArrayOutputStream out, long value) {
+		write(out, (value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Read a non-negative number
+	 */
+	public static long read(ByteBuffer in) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Read a number that may be negative
+	 */
+	public static long readSigned(ByteBuffer in) {
+		long value = read(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Read a non-negative number if the buffer holds all of it. Otherwise the
+	 * position of the buffer is not changed.
+	 * @return the number or {@link #INCOMPLETE}
+	 */
+	public static long tryRead(ByteBuffer in) {
+		int start = in.position();
+		for (int i = start; i < in.limit(); i += 1) {
+			if ((in.get(i) & 0x80) == 0) {
+				return read(in);
+			}
+		}
+		return INCOMPLETE;
+	}
+
+	/**
+	 * @return how many bytes the number takes
+	 */
+	public static int size(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			size += 1;
+		}
+		return size;
+	}
+}
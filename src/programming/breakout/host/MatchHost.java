@@ -0,0 +1,233 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.host;
+
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import programming.breakout.engine.Autopilot;
+import programming.breakout.engine.Engine;
+import programming.breakout.engine.GameState;
+import programming.breakout.metrics.Histogram;
+import programming.breakout.metrics.Metrics;
+
+/**
+ * Runs many matches in one process. Instead of a thread per match sleeping
+ * between ticks, the matches are spread over the slots of a timer wheel, one
+ * slot per millisecond of a tick. A single timer thread hands the matches of a
+ * slot to a pool with a worker per core when the slot is due, so the work of
+ * a tick is spread evenly over its length.
+ */
+public class MatchHost {
+	/**
+	 * Length of a slot of the wheel in nanoseconds
+	 */
+	private static final long SLOT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int SLOTS = Engine.REFRESH_RATE;
+
+	/**
+	 * How many matches a worker ticks at once
+	 */
+	private static final int BATCH_SIZE = 16;
+
+	/**
+	 * Time from when a tick was due to when it started
+	 */
+	private static final Histogram lateness =
+		Metrics.histogram("host.tickLateness");
+	private static final Histogram tickTime = Metrics.histogram("host.tickTime");
+
+	/**
+	 * A game and the engine running it
+	 */
+	private static class Match {
+		final GameState state;
+		final Engine engine;
+		final AtomicBoolean ticking = new AtomicBoolean();
+
+		Match(GameState state, Engine engine) {
+			this.state = state;
+			this.engine = engine;
+		}
+	}
+
+	private final ArrayList<CopyOnWriteArrayList<Match>> wheel =
+		new ArrayList<CopyOnWriteArrayList<Match>>(SLOTS);
+	private final int workerCount;
+	private final ExecutorService workers;
+	private Thread timer;
+	private volatile boolean running;
+	private int nextSlot = 0;
+
+	/**
+	 * Create a host with a worker for every core
+	 */
+	public MatchHost() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param workerCount how many threads tick matches
+	 */
+	public MatchHost(int workerCount) {
+		this.workerCount = workerCount;
+		this.workers = Executors.newFixedThreadPool(workerCount);
+		for (int i = 0; i < SLOTS; i += 1) {
+			wheel.add(new CopyOnWriteArrayList<Match>());
+		}
+	}
+
+	/**
+	 * Start a new match
+	 * @param autopilot whether an {@link Autopilot} plays the match
+	 * @return the game state of the match, e.g. to be observed
+	 */
+	public synchronized GameState addMatch(boolean autopilot) {
+		GameState state = new GameState();
+		Engine engine = new Engine(state);
+		if (autopilot) {
+			new Autopilot(state, engine);
+		}
+		state.setPaused(false);
+
+		wheel.get(nextSlot).add(new Match(state, engine));
+		nextSlot = (nextSlot + 1) % SLOTS;
+		Metrics.add("host.matches", 1);
+
+		return state;
+	}
+
+	/**
+	 * @return how many matches are running
+	 */
+	public int getMatchCount() {
+		int count = 0;
+		for (CopyOnWriteArrayList<Match> slot : wheel) {
+			count += slot.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return how many threads tick matches
+	 */
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	/**
+	 * Start ticking the matches
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+
+		running = true;
+		timer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				turnWheel();
+			}
+		}, "MatchHost timer");
+		timer.setDaemon(true);
+		timer.start();
+	}
+
+	/**
+	 * Stop ticking the matches and wait for running ticks to finish
+	 */
+	public void stop() throws InterruptedException {
+		running = false;
+		if (timer != null) {
+			timer.join();
+		}
+		workers.shutdown();
+		workers.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Hand every slot to the workers when it is due
+	 */
+	private void turnWheel() {
+		long start = System.nanoTime();
+		for (long turn = 0; running; turn += 1) {
+			for (int slot = 0; slot < SLOTS && running; slot += 1) {
+				long due = start + (turn*SLOTS + slot)*SLOT_NANOS;
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+
+				submit(wheel.get(slot), due);
+			}
+		}
+	}
+
+	/**
+	 * Tick the matches of a slot in batches
+	 */
+	private void submit(final CopyOnWriteArrayList<Match> slot, final long due) {
+		Object[] matches = slot.toArray();
+		for (int i = 0; i < matches.length; i += BATCH_SIZE) {
+			final Object[] batch = new Object[Math.min(BATCH_SIZE,
+			                                           matches.length - i)];
+			System.arraycopy(matches, i, batch, 0, batch.length);
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (Object match : batch) {
+						tick(slot, (Match) match, due);
+					}
+				}
+			});
+		}
+	}
+
+	private void tick(CopyOnWriteArrayList<Match> slot, Match match, long due) {
+		// A match that is still ticking from its last turn is late already
+		if (!match.ticking.compareAndSet(false, true)) {
+			Metrics.increment("host.ticksSkipped");
+			return;
+		}
+
+		try {
+			long start = System.nanoTime();
+			lateness.record(start - due);
+
+			match.engine.tick();
+			tickTime.record(System.nanoTime() - start);
+
+			if (match.engine.isFinished()) {
+				slot.remove(match);
+				Metrics.add("host.matches", -1);
+				Metrics.increment("host.matchesFinished");
+			}
+		} finally {
+			match.ticking.set(false);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A global registry of named measurements. Gauges hold the last value that was
+ * set, counters are incremented and histograms collect durations. All of them
+ * can be read from any thread.
+ */
+public class Metrics {
+	private static final ConcurrentHashMap<String, Double> gauges =
+		new ConcurrentHashMap<String, Double>();
+	private static final ConcurrentHashMap<String, AtomicLong> counters =
+		new ConcurrentHashMap<String, AtomicLong>();
+	private static final ConcurrentHashMap<String, Histogram> histograms =
+		new ConcurrentHashMap<String, Histogram>();
+
+	private Metrics() {}
+
+	/**
+	 * Set a gauge to the given value
+	 */
+	public static void set(String name, double value) {
+		gauges.put(name, value);
+	}
+
+	/**
+	 * @return the value of the gauge or {@code NaN} if it was never set
+	 */
+	public static double get(String name) {
+		Double value = gauges.get(name);
+		return value == null ? Double.NaN : value;
+	}
+
+	/**
+	 * Add to a counter
+	 */
+	public static void add(String name, long delta) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			counters.putIfAbsent(name, new AtomicLong());
+			counter = counters.get(name);
+		}
+		counter.addAndGet(delta);
+	}
+
+	/**
+	 * Increment a counter by one
+	 */
+	public static void increment(String name) {
+		add(name, 1);
+	}
+
+	/**
+	 * @return the value of the counter
+	 */
+	public static long getCount(String name) {
+		AtomicLong counter = counters.get(name);
+		return counter == null ? 0 : counter.get();
+	}
+
+	/**
+	 * Get a histogram, creating it if it does not exist yet
+	 */
+	public static Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histograms.putIfAbsent(name, new Histogram());
+			histogram = histograms.get(name);
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return all gauges and counters sorted by name. Histograms are reported as
+	 * their count and their percentiles in milliseconds.
+	 */
+	public static Map<String, Double> snapshot() {
+		TreeMap<String, Double> result = new TreeMap<String, Double>(gauges);
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			result.put(entry.getKey(), (double) entry.getValue().get());
+		}
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			String name = entry.getKey();
+			Histogram histogram = entry.getValue();
+			result.put(name + ".count", (double) histogram.getCount());
+			result.put(name + ".p50Millis", histogram.getPercentile(50)/1e6);
+			result.put(name + ".p90Millis", histogram.getPercentile(90)/1e6);
+			result.put(name + ".p99Millis", histogram.getPercentile(99)/1e6);
+			result.put(name + ".maxMillis", histogram.getMax()/1e6);
+		}
+		return result;
+	}
+
+	/**
+	 * @return all measurements, one per line
+	 */
+	public static String report() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, Double> entry : snapshot().entrySet()) {
+			builder.append(String.format("%-40s %12.3f%n",
+			                             entry.getKey(), entry.getValue()));
+		}
+		return builder.toString();
+	}
+}
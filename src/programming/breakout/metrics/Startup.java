@@ -0,0 +1,59 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the cold start of the game, from the start of the JVM to the first
+ * painted frame. The time is kept in the gauge {@code startup.firstFrameMillis}.
+ * If the system property {@code breakout.startup.exit} is set the time is
+ * printed and the JVM exits, which is used to time and train startup.
+ */
+public class Startup {
+	private static volatile boolean done = false;
+
+	private Startup() {}
+
+	/**
+	 * Note that a frame was painted. Only the first call is recorded.
+	 */
+	public static void firstFrame() {
+		if (done) {
+			return;
+		}
+		synchronized (Startup.class) {
+			if (done) {
+				return;
+			}
+			done = true;
+		}
+
+		long millis = System.currentTimeMillis() -
+			ManagementFactory.getRuntimeMXBean().getStartTime();
+		Metrics.set("startup.firstFrameMillis", millis);
+
+		if (Boolean.getBoolean("breakout.startup.exit")) {
+			System.out.println("first frame after " + millis + " ms");
+			System.exit(0);
+		}
+	}
+}
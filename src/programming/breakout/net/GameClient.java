@@ -0,0 +1,170 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import programming.breakout.engine.GameState;
+import programming.breakout.engine.InputEvent;
+import programming.breakout.engine.InputQueue;
+import programming.breakout.engine.StateDecoder;
+import programming.breakout.engine.StateEncoder;
+
+/**
+ * Mirrors a game running on a {@link GameServer} in a local game state, which
+ * can be observed by a view as usual. Paddle input is taken from a local input
+ * queue and sent to the server whenever a message from the server arrived, and
+ * at least every {@link #SEND_INTERVAL} milliseconds, as the server does not
+ * send anything while nothing changes. Spectators have no input queue and only
+ * watch.
+ */
+public class GameClient implements Runnable {
+	/**
+	 * Longest time between sending input, in milliseconds
+	 */
+	private static final int SEND_INTERVAL = 20;
+
+	private SocketChannel channel;
+	private GameState state;
+	private InputQueue input;
+	private StateDecoder decoder;
+	private ByteBuffer lengthByte = ByteBuffer.allocate(1);
+
+	/**
+	 * Connect to a server and wait for the complete game state
+	 * @param state the game state to mirror the game in
+	 * @param input the queue to take paddle input from or {@code null} to only
+	 * watch the game
+	 */
+	public GameClient(InetSocketAddress address, GameState state,
+	                  InputQueue input) throws IOException {
+		this.state = state;
+		this.input = input;
+		this.decoder = new StateDecoder(state);
+
+		channel = SocketChannel.open(address);
+		channel.socket().setTcpNoDelay(true);
+
+		// Make sure the mirror is complete before anyone looks at it
+		while (receive() != StateEncoder.SNAPSHOT) {
+		}
+	}
+
+	/**
+	 * Receive the game until the connection is closed
+	 */
+	@Override
+	public void run() {
+		if (input != null) {
+			Thread sender = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (channel.isOpen()) {
+							sendInput();
+							Thread.sleep(SEND_INTERVAL);
+						}
+					} catch (InterruptedException ex) {
+					} catch (IOException ex) {
+						// Reported by the receiving thread
+					}
+				}
+			});
+			sender.setDaemon(true);
+			sender.start();
+		}
+
+		try {
+			while (true) {
+				receive();
+				sendInput();
+			}
+		} catch (EOFException ex) {
+			// Server closed the connection
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Close the connection
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Read a message and apply it to the mirror
+	 * @return the type of the message
+	 */
+	private byte receive() throws IOException {
+		ByteBuffer message = ByteBuffer.allocate(readLength());
+		readFully(message);
+		message.flip();
+
+		return decoder.apply(message);
+	}
+
+	/**
+	 * Send all input that was queued since the last time
+	 */
+	private synchronized void sendInput() throws IOException {
+		if (input == null) {
+			return;
+		}
+
+		InputEvent event;
+		while ((event = input.poll()) != null) {
+			ByteBuffer message = ByteBuffer.wrap(StateEncoder.motion(event));
+			while (message.hasRemaining()) {
+				channel.write(message);
+			}
+		}
+	}
+
+	/**
+	 * Read the varint length prefix of a message
+	 */
+	private int readLength() throws IOException {
+		int length = 0;
+		for (int shift = 0;; shift += 7) {
+			lengthByte.clear();
+			readFully(lengthByte);
+			byte b = lengthByte.get(0);
+			length |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return length;
+			}
+		}
+	}
+
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import programming.breakout.engine.GameState;
+import programming.breakout.engine.InputEvent;
+import programming.breakout.engine.InputQueue;
+import programming.breakout.engine.StateDecoder;
+import programming.breakout.engine.StateEncoder;
+import programming.breakout.engine.Varint;
+import programming.breakout.metrics.Metrics;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * Streams an authoritative game to remote clients. The engine runs on its own
+ * thread as usual, the server observes the game state and sends every tick's
+ * delta to all clients. Paddle motion sent by clients is handed to the
+ * engine's input queue, clients that send nothing just watch the game. All
+ * networking happens on a single thread using a non-blocking selector.
+ *
+ * Every message is serialized once into a direct buffer shared by all
+ * clients. A client that falls too far behind has its waiting deltas dropped
+ * and gets the next snapshot (keyframe) instead.
+ */
+public class GameServer implements Runnable, Observer {
+	private static final int READ_BUFFER_SIZE = 1024;
+
+	/**
+	 * How many messages may wait for a client before it is skipped forward
+	 */
+	private static final int MAX_BACKLOG = 25;
+
+	/**
+	 * A connected client
+	 */
+	private class Client {
+		final SocketChannel channel;
+		final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+		volatile boolean needsSnapshot = true;
+
+		Client(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Queue a shared message. If the client is too far behind, drop every
+		 * waiting message that has not started being written and wait for the
+		 * next snapshot instead.
+		 */
+		synchronized void send(ByteBuffer message) {
+			if (out.size() >= MAX_BACKLOG) {
+				ByteBuffer current = out.peekFirst();
+				Metrics.add("net.server.messagesSkipped", out.size());
+				out.clear();
+				if (current.position() > 0) {
+					out.add(current);
+				}
+				needsSnapshot = true;
+				return;
+			}
+
+			// Every client has its own position in the shared content
+			out.add(message.duplicate());
+		}
+
+		/**
+		 * @return whether there is data waiting to be sent
+		 */
+		synchronized boolean hasPending() {
+			return !out.isEmpty();
+		}
+
+		/**
+		 * Write as much of the waiting data as the channel accepts
+		 */
+		synchronized void flush() throws IOException {
+			while (!out.isEmpty()) {
+				channel.write(out.peekFirst());
+				if (out.peekFirst().hasRemaining()) {
+					return;
+				}
+				out.pollFirst();
+				Metrics.increment("net.server.messagesSent");
+			}
+		}
+	}
+
+	private GameState state;
+	private StateEncoder encoder = new StateEncoder();
+	private InputQueue input;
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private CopyOnWriteArrayList<Client> clients =
+		new CopyOnWriteArrayList<Client>();
+
+	/**
+	 * Create a server and register it with the given GameState
+	 * @param input the queue of the engine running the game
+	 * @param address the address to listen on
+	 */
+	public GameServer(GameState state, InputQueue input,
+	                  InetSocketAddress address) throws IOException {
+		this.state = state;
+		this.input = input;
+
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.bind(address);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		state.addObserver(this);
+	}
+
+	/**
+	 * @return the address the server listens on
+	 */
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * Send what changed to all clients. Called on the engine thread at the end
+	 * of every tick.
+	 */
+	@Override
+	public void update(Observable observable, Object arg) {
+		ByteBuffer snapshot = null;
+		ByteBuffer delta = null;
+
+		// The delta has to be encoded before the snapshot of the same tick
+		if (arg instanceof GameDelta) {
+			for (Client client : clients) {
+				if (!client.needsSnapshot) {
+					delta = share(encoder.delta(state, (GameDelta) arg));
+					break;
+				}
+			}
+		}
+
+		for (Client client : clients) {
+			if (client.needsSnapshot || delta == null) {
+				if (snapshot == null) {
+					snapshot = share(encoder.snapshot(state));
+				}
+				client.needsSnapshot = false;
+				client.send(snapshot);
+			} else {
+				client.send(delta);
+			}
+		}
+
+		Metrics.set("net.server.clients", clients.size());
+		selector.wakeup();
+	}
+
+	/**
+	 * Copy an encoded message into a direct buffer, which is then sent to all
+	 * clients without copying it again
+	 */
+	private static ByteBuffer share(byte[] message) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(message.length);
+		buffer.put(message);
+		buffer.flip();
+		Metrics.add("net.server.bytesEncoded", message.length);
+		return buffer;
+	}
+
+	/**
+	 * Accept clients, read their input and send them the game
+	 */
+	@Override
+	public void run() {
+		try {
+			while (serverChannel.isOpen()) {
+				selector.select();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					try {
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							if (key.isReadable()) {
+								read(key);
+							}
+							if (key.isValid() && key.isWritable()) {
+								write(key);
+							}
+						}
+					} catch (IOException ex) {
+						disconnect(key);
+					}
+				}
+
+				// Wait until the channel can be written if there is data waiting
+				for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+					if (key.isValid() && key.attachment() != null) {
+						Client client = (Client) key.attachment();
+						key.interestOps(client.hasPending()
+						                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+						                : SelectionKey.OP_READ);
+					}
+				}
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stop listening and disconnect all clients
+	 */
+	public void close() throws IOException {
+		serverChannel.close();
+		for (Client client : clients) {
+			client.channel.close();
+		}
+		selector.wakeup();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+
+		Client client = new Client(channel);
+		channel.register(selector, SelectionKey.OP_READ, client);
+		clients.add(client);
+	}
+
+	/**
+	 * Read input messages of a client. A client sending a message that cannot
+	 * be decoded, or that does not fit into the read buffer, is disconnected.
+	 */
+	private void read(SelectionKey key) throws IOException {
+		Client client = (Client) key.attachment();
+		if (client.channel.read(client.in) < 0) {
+			disconnect(key);
+			return;
+		}
+
+		client.in.flip();
+		try {
+			while (client.in.hasRemaining()) {
+				int start = client.in.position();
+				long length = Varint.tryRead(client.in);
+				if (length == Varint.INCOMPLETE) {
+					client.in.position(start);
+					break;
+				}
+				if (length <= 0 ||
+				    length > READ_BUFFER_SIZE - (client.in.position() - start)) {
+					malformed(key);
+					return;
+				}
+				if (client.in.remaining() < length) {
+					client.in.position(start);
+					break;
+				}
+
+				ByteBuffer message = client.in.slice();
+				message.limit((int) length);
+				client.in.position(client.in.position() + (int) length);
+
+				if (message.get() == StateEncoder.MOTION) {
+					InputEvent event = StateDecoder.readMotion(message);
+					input.offerMotion(event.getTimestamp(),
+					                  event.getDx(), event.getDy(),
+					                  event.getSequence());
+				}
+			}
+		} catch (RuntimeException ex) {
+			malformed(key);
+			return;
+		}
+		client.in.compact();
+
+		// Only a length that never ends can fill the whole buffer
+		if (!client.in.hasRemaining()) {
+			malformed(key);
+		}
+	}
+
+	/**
+	 * Disconnect a client that sent something that is not a valid message
+	 */
+	private void malformed(SelectionKey key) {
+		Metrics.increment("net.server.malformed");
+		disconnect(key);
+	}
+
+	private void write(SelectionKey key) throws IOException {
+		((Client) key.attachment()).flush();
+	}
+
+	private void disconnect(SelectionKey key) {
+		key.cancel();
+		clients.remove(key.attachment());
+		try {
+			key.channel().close();
+		} catch (IOException ex) {
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import acm.graphics.GObject;
+import acm.graphics.GRectangle;
+
+import programming.breakout.engine.Rectangle;
+
+/**
+ * The static brick layer. Bricks never move, so instead of repainting every
+ * brick every frame they are drawn once into an offscreen image. When a brick
+ * is destroyed only the region it covered is rendered again.
+ *
+ * The bricks are kept in a grid of cells the size of the largest brick, so a
+ * brick overlaps at most four cells. Removing a brick and rendering its
+ * region only look at the bricks in the cells it covers.
+ */
+@SuppressWarnings("serial")
+class BrickLayer extends GObject {
+	private ArrayList<ArrayList<Rectangle>> cells =
+		new ArrayList<ArrayList<Rectangle>>();
+	private int columns, rows;
+	private double cellWidth = 1, cellHeight = 1;
+	private BufferedImage image;
+	private double scale = 1;
+	private double width, height;
+	private Color color;
+
+	/**
+	 * @param color the color to draw the bricks with
+	 */
+	BrickLayer(Color color) {
+		this.color = color;
+	}
+
+	/**
+	 * Replace all bricks and resize the cached image. The bricks are rendered
+	 * at once instead of one by one.
+	 * @param width width of the playing field in game units
+	 * @param height height of the playing field in game units
+	 * @param scale pixels per game unit
+	 * @param bricks the bricks to draw
+	 */
+	void reset(double width, double height, double scale,
+	           List<Rectangle> bricks) {
+		this.width = width;
+		this.height = height;
+
+		cellWidth = 0;
+		cellHeight = 0;
+		for (Rectangle brick : bricks) {
+			cellWidth = Math.max(cellWidth, brick.getWidth());
+			cellHeight = Math.max(cellHeight, brick.getHeight());
+		}
+		if (cellWidth <= 0 || cellHeight <= 0) {
+			cellWidth = Math.max(width, 1);
+			cellHeight = Math.max(height, 1);
+		}
+		columns = Math.max(1, (int) Math.ceil(width/cellWidth));
+		rows = Math.max(1, (int) Math.ceil(height/cellHeight));
+
+		cells.clear();
+		for (int i = 0; i < columns*rows; i += 1) {
+			cells.add(new ArrayList<Rectangle>());
+		}
+		for (Rectangle brick : bricks) {
+			insert(brick);
+		}
+
+		setScale(scale);
+	}
+
+	/**
+	 * Change the scale and render all bricks again
+	 */
+	void setScale(double scale) {
+		this.scale = scale;
+
+		int pixelWidth = (int) Math.ceil(width*scale);
+		int pixelHeight = (int) Math.ceil(height*scale);
+		if (pixelWidth <= 0 || pixelHeight <= 0) {
+			image = null;
+			return;
+		}
+
+		image = new BufferedImage(pixelWidth, pixelHeight,
+		                          BufferedImage.TYPE_INT_ARGB);
+		renderRegion(0, 0, pixelWidth, pixelHeight);
+	}
+
+	/**
+	 * Add a brick to the layer
+	 */
+	void add(Rectangle brick) {
+		insert(brick);
+
+		if (image != null) {
+			Graphics2D g = image.createGraphics();
+			drawBrick(g, brick);
+			g.dispose();
+			repaint();
+		}
+	}
+
+	/**
+	 * Remove a brick from the layer and render the region it covered again.
+	 */
+	void remove(Rectangle brick) {
+		if (cells.isEmpty()) {
+			return;
+		}
+
+		boolean found = false;
+		int lastColumn = lastColumn(brick), lastRow = lastRow(brick);
+		for (int row = firstRow(brick); row <= lastRow; row += 1) {
+			for (int column = firstColumn(brick); column <= lastColumn;
+			     column += 1) {
+				found |= removeFrom(cells.get(row*columns + column), brick);
+			}
+		}
+		if (!found || image == null) {
+			return;
+		}
+
+		//Grow the dirty region by a pixel to catch rounding at the edges
+		int x = (int) Math.floor(brick.getX()*scale) - 1;
+		int y = (int) Math.floor(brick.getY()*scale) - 1;
+		int w = (int) Math.ceil(brick.getWidth()*scale) + 3;
+		int h = (int) Math.ceil(brick.getHeight()*scale) + 3;
+		renderRegion(x, y, w, h);
+		repaint();
+	}
+
+	/**
+	 * Put a brick into every cell it overlaps
+	 */
+	private void insert(Rectangle brick) {
+		if (cells.isEmpty()) {
+			return;
+		}
+		int lastColumn = lastColumn(brick), lastRow = lastRow(brick);
+		for (int row = firstRow(brick); row <= lastRow; row += 1) {
+			for (int column = firstColumn(brick); column <= lastColumn;
+			     column += 1) {
+				cells.get(row*columns + column).add(brick);
+			}
+		}
+	}
+
+	/**
+	 * Remove a brick from a cell by swapping the last brick into its place
+	 * @return if the brick was in the cell
+	 */
+	private static boolean removeFrom(ArrayList<Rectangle> cell,
+	                                  Rectangle brick) {
+		for (int i = 0; i < cell.size(); i += 1) {
+			if (cell.get(i) == brick) {
+				cell.set(i, cell.get(cell.size() - 1));
+				cell.remove(cell.size() - 1);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int firstColumn(Rectangle brick) {
+		return column(brick.getX());
+	}
+
+	private int lastColumn(Rectangle brick) {
+		return column(brick.getX() + brick.getWidth());
+	}
+
+	private int firstRow(Rectangle brick) {
+		return row(brick.getY());
+	}
+
+	private int lastRow(Rectangle brick) {
+		return row(brick.getY() + brick.getHeight());
+	}
+
+	private int column(double x) {
+		return Math.max(0, Math.min(columns - 1, (int) Math.floor(x/cellWidth)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor(y/cellHeight)));
+	}
+
+	/**
+	 * Clear a region of the image and draw all the bricks intersecting it.
+	 */
+	private void renderRegion(int x, int y, int w, int h) {
+		Graphics2D g = image.createGraphics();
+		g.clipRect(x, y, w, h);
+
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(x, y, w, h);
+		g.setComposite(AlphaComposite.SrcOver);
+
+		if (!cells.isEmpty()) {
+			int firstColumn = column(x/scale), lastColumn = column((x + w)/scale);
+			int firstRow = row(y/scale), lastRow = row((y + h)/scale);
+			for (int row = firstRow; row <= lastRow; row += 1) {
+				for (int column = firstColumn; column <= lastColumn; column += 1) {
+					for (Rectangle brick : cells.get(row*columns + column)) {
+						//A brick in several cells is drawn from the first of them
+						//inside the region only
+						if (Math.max(firstColumn(brick), firstColumn) == column &&
+						    Math.max(firstRow(brick), firstRow) == row &&
+						    brick.getX()*scale < x + w &&
+						    (brick.getX() + brick.getWidth())*scale > x &&
+						    brick.getY()*scale < y + h &&
+						    (brick.getY() + brick.getHeight())*scale > y) {
+							drawBrick(g, brick);
+						}
+					}
+				}
+			}
+		}
+
+		g.dispose();
+	}
+
+	/**
+	 * Draw a single brick, the same way a filled GRect would be drawn
+	 */
+	private void drawBrick(Graphics2D g, Rectangle brick) {
+		int x = (int) Math.round(brick.getX()*scale);
+		int y = (int) Math.round(brick.getY()*scale);
+		int w = (int) Math.round(brick.getWidth()*scale);
+		int h = (int) Math.round(brick.getHeight()*scale);
+
+		g.setColor(color);
+		g.fillRect(x, y, w, h);
+		g.drawRect(x, y, w, h);
+	}
+
+	/**
+	 * Draw the cached image
+	 */
+	@Override
+	public void paint(Graphics g) {
+		if (image != null) {
+			g.drawImage(image,
+			            (int) Math.round(getX()), (int) Math.round(getY()), null);
+		}
+	}
+
+	@Override
+	public GRectangle getBounds() {
+		return new GRectangle(getX(), getY(), width*scale, height*scale);
+	}
+}
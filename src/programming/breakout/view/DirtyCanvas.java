@@ -0,0 +1,154 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import acm.graphics.GCanvas;
+import acm.graphics.GObject;
+import acm.graphics.GRectangle;
+
+import programming.breakout.metrics.Histogram;
+import programming.breakout.metrics.Metrics;
+import programming.breakout.metrics.Startup;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * A canvas that does not repaint itself whenever an object changes. Instead
+ * the changed regions are collected in a {@link DirtyRegion} and repainted at
+ * once with {@link #repaint(DirtyRegion)}. Painting only touches objects
+ * intersecting the region being repainted.
+ *
+ * The time a paint takes, together with the time the scene took to prepare
+ * it, is reported to the scene, so that the effects are scaled by what a
+ * frame really costs.
+ */
+@SuppressWarnings("serial")
+class DirtyCanvas extends GCanvas {
+	/**
+	 * Time from an input to the frame showing its effect being painted
+	 */
+	private static final Histogram inputLatency =
+		Metrics.histogram("view.inputToFrame");
+
+	/**
+	 * Oldest input shown by the next paint, set by the animation thread and
+	 * taken by the event dispatch thread
+	 */
+	private final AtomicLong inputTimestamp =
+		new AtomicLong(GameDelta.NO_INPUT);
+
+	/**
+	 * Time spent on the frames shown by the next paint before painting
+	 */
+	private AtomicLong pendingNanos = new AtomicLong();
+
+	private volatile Scene scene;
+
+	DirtyCanvas() {
+		setAutoRepaintFlag(false);
+	}
+
+	/**
+	 * Set the scene to report frame times to
+	 */
+	void setScene(Scene scene) {
+		this.scene = scene;
+	}
+
+	/**
+	 * Repaint the union of everything marked dirty and clear the region
+	 * @param inputTimestamp when the oldest input shown in this frame happened
+	 * or {@link GameDelta#NO_INPUT}
+	 * @param nanos time spent on the frame so far
+	 * @return if a paint was requested, otherwise the frame is complete
+	 */
+	boolean repaint(DirtyRegion region, long inputTimestamp, long nanos) {
+		if (inputTimestamp != GameDelta.NO_INPUT) {
+			this.inputTimestamp.compareAndSet(GameDelta.NO_INPUT,
+			                                   inputTimestamp);
+		}
+
+		Rectangle bounds = region.getBounds();
+		boolean requested = region.isAllDirty() || bounds != null;
+		if (requested) {
+			pendingNanos.addAndGet(nanos);
+		}
+
+		if (region.isAllDirty()) {
+			repaint();
+		} else if (bounds != null) {
+			repaint(bounds.x, bounds.y, bounds.width, bounds.height);
+		}
+
+		region.clear();
+		return requested;
+	}
+
+	/**
+	 * Paint all objects intersecting the clip region
+	 */
+	@Override
+	public void paint(Graphics g) {
+		long start = System.nanoTime();
+
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+		g.setColor(getForeground());
+
+		Iterator<GObject> it = iterator();
+		while (it.hasNext()) {
+			GObject obj = it.next();
+			if (obj.isVisible() && intersects(obj.getBounds(), clip)) {
+				obj.paint(g);
+			}
+		}
+
+		long timestamp = inputTimestamp.getAndSet(GameDelta.NO_INPUT);
+		if (timestamp != GameDelta.NO_INPUT) {
+			inputLatency.record(System.nanoTime() - timestamp);
+		}
+
+		Scene scene = this.scene;
+		if (scene != null) {
+			scene.frameRendered(pendingNanos.getAndSet(0)
+			                    + System.nanoTime() - start);
+		}
+
+		Startup.firstFrame();
+	}
+
+	private static boolean intersects(GRectangle bounds, Rectangle clip) {
+		return bounds.getX() <= clip.x + clip.width &&
+			bounds.getX() + bounds.getWidth() >= clip.x &&
+			bounds.getY() <= clip.y + clip.height &&
+			bounds.getY() + bounds.getHeight() >= clip.y;
+	}
+}
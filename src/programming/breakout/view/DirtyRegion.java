@@ -0,0 +1,93 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.awt.Rectangle;
+
+import acm.graphics.GRectangle;
+
+/**
+ * The union of all regions that changed since the last repaint.
+ */
+class DirtyRegion {
+	/**
+	 * Extra pixels around every dirty region, to catch outlines and rounding
+	 */
+	private static final int DIRTY_MARGIN = 2;
+
+	private Rectangle dirty = null;
+	private boolean allDirty = false;
+
+	/**
+	 * Mark a region in canvas coordinates as changed
+	 */
+	void markDirty(double x, double y, double width, double height) {
+		if (allDirty || width <= 0 || height <= 0) {
+			return;
+		}
+
+		Rectangle region =
+			new Rectangle((int) Math.floor(x) - DIRTY_MARGIN,
+			              (int) Math.floor(y) - DIRTY_MARGIN,
+			              (int) Math.ceil(width) + 2*DIRTY_MARGIN + 1,
+			              (int) Math.ceil(height) + 2*DIRTY_MARGIN + 1);
+		dirty = dirty == null ? region : dirty.union(region);
+	}
+
+	/**
+	 * Mark a region in canvas coordinates as changed
+	 */
+	void markDirty(GRectangle bounds) {
+		markDirty(bounds.getX(), bounds.getY(),
+		          bounds.getWidth(), bounds.getHeight());
+	}
+
+	/**
+	 * Mark everything as changed
+	 */
+	void markAllDirty() {
+		allDirty = true;
+		dirty = null;
+	}
+
+	/**
+	 * @return whether everything has to be repainted
+	 */
+	boolean isAllDirty() {
+		return allDirty;
+	}
+
+	/**
+	 * @return the union of all changed regions or {@code null} if nothing
+	 * changed
+	 */
+	Rectangle getBounds() {
+		return dirty;
+	}
+
+	/**
+	 * Forget all changes
+	 */
+	void clear() {
+		allDirty = false;
+		dirty = null;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.awt.Color;
+import java.awt.Shape;
+
+import programming.breakout.engine.Entity;
+
+/**
+ * Draws one type of entity. The shape is built once as a template for the
+ * current scale and size and then stamped wherever an entity of that size is.
+ */
+abstract class EntityRenderer<E extends Entity> {
+	private final Color color;
+	private final double particleSpeed;
+
+	private Shape template;
+	private double templateScale = Double.NaN;
+	private double templateWidth, templateHeight;
+
+	/**
+	 * @param color the color to fill the shape with
+	 * @param particleSpeed how fast particles fly when the entity is destroyed
+	 */
+	EntityRenderer(Color color, double particleSpeed) {
+		this.color = color;
+		this.particleSpeed = particleSpeed;
+	}
+
+	/**
+	 * Build the shape of the entity in pixels, relative to its position
+	 */
+	abstract Shape createTemplate(E entity, double scale);
+
+	/**
+	 * @return the width of the entity in game units
+	 */
+	abstract double getWidth(E entity);
+
+	/**
+	 * @return the height of the entity in game units
+	 */
+	abstract double getHeight(E entity);
+
+	double getParticleSpeed() {
+		return particleSpeed;
+	}
+
+	/**
+	 * Create the object showing an entity
+	 */
+	Stamp create(E entity, double scale) {
+		Stamp stamp = new Stamp(getTemplate(entity, scale));
+		stamp.setColor(color);
+		stamp.setLocation(entity.getX()*scale, entity.getY()*scale);
+		return stamp;
+	}
+
+	/**
+	 * Update the object showing an entity for a new scale
+	 */
+	void rescale(Stamp stamp, E entity, double scale) {
+		stamp.setTemplate(getTemplate(entity, scale));
+		stamp.setLocation(entity.getX()*scale, entity.getY()*scale);
+	}
+
+	/**
+	 * Get the template for the entity, only building it again if the scale or
+	 * the size changed
+	 */
+	private Shape getTemplate(E entity, double scale) {
+		double width = getWidth(entity), height = getHeight(entity);
+		if (scale != templateScale || width != templateWidth ||
+		    height != templateHeight) {
+			template = createTemplate(entity, scale);
+			templateScale = scale;
+			templateWidth = width;
+			templateHeight = height;
+		}
+		return template;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Observable;
+import java.util.Observer;
+
+import javax.imageio.ImageIO;
+
+import acm.graphics.GCompound;
+
+import programming.breakout.engine.GameState;
+import programming.breakout.metrics.Histogram;
+import programming.breakout.metrics.Metrics;
+import programming.breakout.metrics.Startup;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * Draws the game into a {@link BufferedImage} instead of a window. This works
+ * without a display, e.g. for render benchmarks or to compare frames against
+ * reference images.
+ */
+public class OffscreenRenderer implements Observer {
+	/**
+	 * Same budget as the View, so frames have the same effects as on screen
+	 */
+	private static final int FRAME_BUDGET = 20;
+
+	/**
+	 * Time from an input to the frame showing its effect being drawn
+	 */
+	private static final Histogram inputLatency =
+		Metrics.histogram("view.inputToFrame");
+
+	private Scene scene;
+	private GCompound root = new GCompound();
+	private BufferedImage image;
+
+	private long frames = 0;
+	private long renderNanos = 0;
+
+	/**
+	 * Create a new renderer and register it with the given GameState
+	 * @param width width of the image in pixels
+	 * @param height height of the image in pixels
+	 */
+	public OffscreenRenderer(GameState state, int width, int height) {
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		scene = new Scene(state, root, FRAME_BUDGET);
+		scene.resize(width, height);
+		scene.redrawAll();
+		state.addObserver(this);
+	}
+
+	/**
+	 * Update us when there is a new game state.
+	 */
+	@Override
+	public void update(Observable observable, Object arg) {
+		scene.update(arg);
+	}
+
+	/**
+	 * Process everything that changed since the last frame and draw the regions
+	 * that changed into the image.
+	 * @return the image containing the new frame
+	 */
+	public BufferedImage renderFrame() {
+		long start = System.nanoTime();
+
+		scene.tick();
+
+		DirtyRegion dirty = scene.getDirtyRegion();
+		Rectangle clip = dirty.isAllDirty()
+			? new Rectangle(0, 0, image.getWidth(), image.getHeight())
+			: dirty.getBounds();
+
+		if (clip != null) {
+			Graphics2D g = image.createGraphics();
+			g.clip(clip);
+			g.setColor(Scene.bgColor);
+			g.fillRect(clip.x, clip.y, clip.width, clip.height);
+			root.paint(g);
+			g.dispose();
+		}
+		dirty.clear();
+
+		long inputTimestamp = scene.takeInputTimestamp();
+		if (inputTimestamp != GameDelta.NO_INPUT) {
+			inputLatency.record(System.nanoTime() - inputTimestamp);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		scene.frameRendered(elapsed);
+		renderNanos += elapsed;
+		frames += 1;
+		Startup.firstFrame();
+
+		return image;
+	}
+
+	/**
+	 * Write the last rendered frame to a PNG file
+	 */
+	public void writeFrame(File file) throws IOException {
+		ImageIO.write(image, "png", file);
+	}
+
+	/**
+	 * @return the number of frames rendered so far
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * @return the average time spent rendering a frame in milliseconds, not
+	 * including writing the frames to disk
+	 */
+	public double getMillisPerFrame() {
+		return frames == 0 ? 0 : renderNanos / 1e6 / frames;
+	}
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import acm.graphics.GObject;
+import acm.graphics.GRectangle;
+
+import programming.breakout.metrics.Metrics;
+
+/**
+ * All particles used for visual effects. The state of the particles, including
+ * the vertices of their shapes, is kept in plain arrays and they are all drawn
+ * by this object. Moving the particles and transforming their vertices is done
+ * in parallel chunks once there are enough particles, afterwards a single pass
+ * compacts away the particles that left the window.
+ */
+@SuppressWarnings("serial")
+class ParticleSystem extends GObject {
+	/**
+	 * Most vertices a particle can have
+	 */
+	static final int MAX_VERTICES = 5;
+
+	/**
+	 * Integrate in parallel from this many particles on, if there is more than
+	 * one processor. A particle takes about 50ns and handing the work to the
+	 * pool up to 45us, so two processors break even below this. Can be changed
+	 * with the system property {@code breakout.particles.parallelThreshold}.
+	 */
+	private static final int PARALLEL_THRESHOLD =
+		Integer.getInteger("breakout.particles.parallelThreshold", 2048);
+
+	/**
+	 * Particles integrated by a single task
+	 */
+	private static final int CHUNK_SIZE = 1024;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private Color color;
+	private double gravityX, gravityY;
+
+	private int count = 0;
+	private double[] x = new double[INITIAL_CAPACITY];
+	private double[] y = new double[INITIAL_CAPACITY];
+	private double[] vx = new double[INITIAL_CAPACITY];
+	private double[] vy = new double[INITIAL_CAPACITY];
+	private double[] torque = new double[INITIAL_CAPACITY];
+	private double[] angle = new double[INITIAL_CAPACITY];
+
+	/**
+	 * Vertices relative to the center of every particle, {@link #MAX_VERTICES}
+	 * per particle, and where they are drawn
+	 */
+	private int[] vertexCount = new int[INITIAL_CAPACITY];
+	private double[] shapeX = new double[INITIAL_CAPACITY*MAX_VERTICES];
+	private double[] shapeY = new double[INITIAL_CAPACITY*MAX_VERTICES];
+	private int[] pointX = new int[INITIAL_CAPACITY*MAX_VERTICES];
+	private int[] pointY = new int[INITIAL_CAPACITY*MAX_VERTICES];
+
+	/**
+	 * Bounds of all drawn vertices
+	 */
+	private int left, top, right, bottom;
+
+	/**
+	 * Integrates a range of particles and collects the bounds of their vertices
+	 */
+	private class Integrate extends RecursiveAction {
+		private final int from, to;
+		private final double timeFactor;
+		private int left, top, right, bottom;
+
+		Integrate(int from, int to, double timeFactor) {
+			this.from = from;
+			this.to = to;
+			this.timeFactor = timeFactor;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= CHUNK_SIZE) {
+				integrate(from, to, timeFactor);
+				left = top = Integer.MAX_VALUE;
+				right = bottom = Integer.MIN_VALUE;
+				for (int i = from; i < to; i += 1) {
+					for (int v = i*MAX_VERTICES; v < i*MAX_VERTICES + vertexCount[i];
+					     v += 1) {
+						left = Math.min(left, pointX[v]);
+						top = Math.min(top, pointY[v]);
+						right = Math.max(right, pointX[v]);
+						bottom = Math.max(bottom, pointY[v]);
+					}
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				Integrate left = new Integrate(from, middle, timeFactor);
+				Integrate right = new Integrate(middle, to, timeFactor);
+				invokeAll(left, right);
+				this.left = Math.min(left.left, right.left);
+				top = Math.min(left.top, right.top);
+				this.right = Math.max(left.right, right.right);
+				bottom = Math.max(left.bottom, right.bottom);
+			}
+		}
+	}
+
+	/**
+	 * @param color the color to draw the particles with
+	 * @param gravityX acceleration of every particle in x direction
+	 * @param gravityY acceleration of every particle in y direction
+	 */
+	ParticleSystem(Color color, double gravityX, double gravityY) {
+		this.color = color;
+		this.gravityX = gravityX;
+		this.gravityY = gravityY;
+		clearBounds();
+	}
+
+	/**
+	 * Add a particle
+	 * @param centerX x coordinate of the center of the particle
+	 * @param centerY y coordinate of the center of the particle
+	 * @param vertices x and y coordinates of the vertices relative to the
+	 * center, alternating, at most {@link #MAX_VERTICES} of them
+	 */
+	void add(double centerX, double centerY, double velocityX,
+	         double velocityY, double torque, double[] vertices) {
+		if (count == x.length) {
+			int capacity = count*2;
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			vx = Arrays.copyOf(vx, capacity);
+			vy = Arrays.copyOf(vy, capacity);
+			this.torque = Arrays.copyOf(this.torque, capacity);
+			angle = Arrays.copyOf(angle, capacity);
+			vertexCount = Arrays.copyOf(vertexCount, capacity);
+			shapeX = Arrays.copyOf(shapeX, capacity*MAX_VERTICES);
+			shapeY = Arrays.copyOf(shapeY, capacity*MAX_VERTICES);
+			pointX = Arrays.copyOf(pointX, capacity*MAX_VERTICES);
+			pointY = Arrays.copyOf(pointY, capacity*MAX_VERTICES);
+		}
+
+		x[count] = centerX;
+		y[count] = centerY;
+		vx[count] = velocityX;
+		vy[count] = velocityY;
+		this.torque[count] = torque;
+		angle[count] = 0;
+		vertexCount[count] = Math.min(vertices.length/2, MAX_VERTICES);
+		for (int v = 0; v < vertexCount[count]; v += 1) {
+			shapeX[count*MAX_VERTICES + v] = vertices[2*v];
+			shapeY[count*MAX_VERTICES + v] = vertices[2*v + 1];
+		}
+		transform(count, count + 1);
+		includeBounds(count);
+		count += 1;
+	}
+
+	/**
+	 * @return the number of live particles
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Calculate the new state of all particles and remove the ones below
+	 * {@code maxY}.
+	 */
+	void tick(double timeFactor, double maxY) {
+		boolean parallel = count >= PARALLEL_THRESHOLD &&
+			ForkJoinPool.getCommonPoolParallelism() > 1;
+		if (parallel) {
+			Integrate task = new Integrate(0, count, timeFactor);
+			ForkJoinPool.commonPool().invoke(task);
+			left = task.left;
+			top = task.top;
+			right = task.right;
+			bottom = task.bottom;
+		} else {
+			integrate(0, count, timeFactor);
+			clearBounds();
+			for (int i = 0; i < count; i += 1) {
+				includeBounds(i);
+			}
+		}
+
+		// Drop particles that left the window
+		int live = 0;
+		for (int i = 0; i < count; i += 1) {
+			if (y[i] > maxY) {
+				continue;
+			}
+
+			if (live != i) {
+				x[live] = x[i];
+				y[live] = y[i];
+				vx[live] = vx[i];
+				vy[live] = vy[i];
+				torque[live] = torque[i];
+				angle[live] = angle[i];
+				vertexCount[live] = vertexCount[i];
+				System.arraycopy(shapeX, i*MAX_VERTICES,
+				                 shapeX, live*MAX_VERTICES, MAX_VERTICES);
+				System.arraycopy(shapeY, i*MAX_VERTICES,
+				                 shapeY, live*MAX_VERTICES, MAX_VERTICES);
+				System.arraycopy(pointX, i*MAX_VERTICES,
+				                 pointX, live*MAX_VERTICES, MAX_VERTICES);
+				System.arraycopy(pointY, i*MAX_VERTICES,
+				                 pointY, live*MAX_VERTICES, MAX_VERTICES);
+			}
+			live += 1;
+		}
+		count = live;
+		if (count == 0) {
+			clearBounds();
+		}
+
+		Metrics.set("view.particles.live", count);
+		Metrics.set("view.particles.parallel", parallel ? 1 : 0);
+	}
+
+	/**
+	 * Scale the positions and shapes of all particles, after the playing field
+	 * was scaled
+	 */
+	void scale(double factor) {
+		for (int i = 0; i < count; i += 1) {
+			x[i] *= factor;
+			y[i] *= factor;
+		}
+		for (int i = 0; i < count*MAX_VERTICES; i += 1) {
+			shapeX[i] *= factor;
+			shapeY[i] *= factor;
+		}
+		transform(0, count);
+		clearBounds();
+		for (int i = 0; i < count; i += 1) {
+			includeBounds(i);
+		}
+		repaint();
+	}
+
+	/**
+	 * Move and rotate particles by their velocity and torque, then accelerate
+	 * them
+	 */
+	private void integrate(int from, int to, double timeFactor) {
+		for (int i = from; i < to; i += 1) {
+			x[i] += vx[i]*timeFactor;
+			y[i] += vy[i]*timeFactor;
+			angle[i] += torque[i]*timeFactor;
+			vx[i] += gravityX*timeFactor;
+			vy[i] += gravityY*timeFactor;
+		}
+		transform(from, to);
+	}
+
+	/**
+	 * Calculate where the vertices of a range of particles are drawn
+	 */
+	private void transform(int from, int to) {
+		for (int i = from; i < to; i += 1) {
+			double cos = Math.cos(angle[i]);
+			double sin = Math.sin(angle[i]);
+			for (int v = i*MAX_VERTICES; v < i*MAX_VERTICES + vertexCount[i];
+			     v += 1) {
+				pointX[v] = (int) Math.round(x[i] + shapeX[v]*cos + shapeY[v]*sin);
+				pointY[v] = (int) Math.round(y[i] - shapeX[v]*sin + shapeY[v]*cos);
+			}
+		}
+	}
+
+	private void clearBounds() {
+		left = top = Integer.MAX_VALUE;
+		right = bottom = Integer.MIN_VALUE;
+	}
+
+	private void includeBounds(int particle) {
+		for (int v = particle*MAX_VERTICES;
+		     v < particle*MAX_VERTICES + vertexCount[particle]; v += 1) {
+			left = Math.min(left, pointX[v]);
+			top = Math.min(top, pointY[v]);
+			right = Math.max(right, pointX[v]);
+			bottom = Math.max(bottom, pointY[v]);
+		}
+	}
+
+	/**
+	 * Draw every particle as a filled polygon
+	 */
+	@Override
+	public void paint(Graphics g) {
+		//The arrays may be grown by the view thread while painting
+		int[] vertexCount = this.vertexCount;
+		int[] pointX = this.pointX;
+		int[] pointY = this.pointY;
+		int count = Math.min(this.count, vertexCount.length);
+		count = Math.min(count, Math.min(pointX.length, pointY.length)/MAX_VERTICES);
+
+		int[] xs = new int[MAX_VERTICES];
+		int[] ys = new int[MAX_VERTICES];
+		int offsetX = (int) Math.round(getX());
+		int offsetY = (int) Math.round(getY());
+
+		g.setColor(color);
+		for (int i = 0; i < count; i += 1) {
+			int n = Math.min(vertexCount[i], MAX_VERTICES);
+			for (int v = 0; v < n; v += 1) {
+				xs[v] = pointX[i*MAX_VERTICES + v] + offsetX;
+				ys[v] = pointY[i*MAX_VERTICES + v] + offsetY;
+			}
+			g.fillPolygon(xs, ys, n);
+			g.drawPolygon(xs, ys, n);
+		}
+	}
+
+	/**
+	 * @return the bounds of all particles, empty when there are none
+	 */
+	@Override
+	public GRectangle getBounds() {
+		if (left > right) {
+			return new GRectangle(getX(), getY(), 0, 0);
+		}
+		//One more pixel for the outline
+		return new GRectangle(getX() + left, getY() + top,
+		                      right - left + 1, bottom - top + 1);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import programming.breakout.metrics.Metrics;
+
+/**
+ * Keeps the time it takes to draw a frame within the frame budget by scaling
+ * the amount of visual effects. Frame times are smoothed, when they get close
+ * to the budget the quality is lowered, when there is plenty of time left it
+ * is raised again. Frame times may be reported from the painting thread.
+ */
+class QualityGovernor {
+	private static final double MIN_QUALITY = .1;
+	private static final double MAX_QUALITY = 1;
+	private static final double QUALITY_STEP = .1;
+
+	/**
+	 * Lower quality above this fraction of the budget, raise it below the other
+	 */
+	private static final double HIGH_LOAD = .8;
+	private static final double LOW_LOAD = .4;
+
+	/**
+	 * Weight of the newest frame in the smoothed frame time
+	 */
+	private static final double SMOOTHING = .2;
+
+	/**
+	 * Frames to wait after a change before changing the quality again
+	 */
+	private static final int COOLDOWN = 10;
+
+	private double budgetMillis;
+	private volatile double quality = MAX_QUALITY;
+	private double frameMillis = 0;
+	private int cooldown = 0;
+
+	/**
+	 * @param budgetMillis the time one frame may take in milliseconds
+	 */
+	QualityGovernor(double budgetMillis) {
+		this.budgetMillis = budgetMillis;
+		report();
+	}
+
+	/**
+	 * Tell the governor how long the last frame took
+	 */
+	synchronized void frameRendered(long nanos) {
+		frameMillis = frameMillis*(1 - SMOOTHING) + nanos/1e6*SMOOTHING;
+
+		if (cooldown > 0) {
+			cooldown -= 1;
+		} else if (frameMillis > budgetMillis*HIGH_LOAD && quality > MIN_QUALITY) {
+			quality = Math.max(MIN_QUALITY, quality - QUALITY_STEP);
+			cooldown = COOLDOWN;
+			Metrics.increment("view.governor.downgrades");
+		} else if (frameMillis < budgetMillis*LOW_LOAD && quality < MAX_QUALITY) {
+			quality = Math.min(MAX_QUALITY, quality + QUALITY_STEP);
+			cooldown = COOLDOWN;
+			Metrics.increment("view.governor.upgrades");
+		}
+
+		report();
+	}
+
+	/**
+	 * @return the current quality between 0 (no effects) and 1 (all effects)
+	 */
+	double getQuality() {
+		return quality;
+	}
+
+	/**
+	 * Scale the number of particles to spawn
+	 */
+	int scaleParticleCount(int count) {
+		return (int) Math.round(count*quality);
+	}
+
+	/**
+	 * Scale the distance between two ovals of the ball trail, so that there are
+	 * fewer ovals at lower quality
+	 */
+	double scaleTrailDistance(double distance) {
+		return distance/quality;
+	}
+
+	/**
+	 * Scale the factor by which trail ovals shrink every frame, so that they
+	 * disappear after fewer frames at lower quality
+	 */
+	double scaleFade(double fade) {
+		return Math.pow(fade, 1/quality);
+	}
+
+	private void report() {
+		Metrics.set("view.governor.quality", quality);
+		Metrics.set("view.governor.frameMillis", frameMillis);
+		Metrics.set("view.governor.budgetMillis", budgetMillis);
+	}
+}
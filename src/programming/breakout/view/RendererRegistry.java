@@ -0,0 +1,65 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.util.HashMap;
+
+import programming.breakout.engine.Entity;
+
+/**
+ * Finds the renderer for an entity by its type. A type without a renderer of
+ * its own uses the one of its nearest superclass that has one.
+ */
+class RendererRegistry {
+	private HashMap<Class<?>, EntityRenderer<?>> renderers =
+		new HashMap<Class<?>, EntityRenderer<?>>();
+
+	/**
+	 * Use a renderer for a type and its subclasses
+	 */
+	<E extends Entity> void register(Class<E> type,
+	                                 EntityRenderer<? super E> renderer) {
+		renderers.put(type, renderer);
+	}
+
+	/**
+	 * Get the renderer for an entity
+	 * @throws IllegalArgumentException if there is none for its type
+	 */
+	@SuppressWarnings("unchecked")
+	EntityRenderer<Entity> get(Entity entity) {
+		Class<?> type = entity.getClass();
+		EntityRenderer<?> renderer = renderers.get(type);
+		if (renderer == null) {
+			for (Class<?> c = type.getSuperclass(); c != null && renderer == null;
+			     c = c.getSuperclass()) {
+				renderer = renderers.get(c);
+			}
+			if (renderer == null) {
+				throw new IllegalArgumentException("I don't know how to display a "
+				                                   + type);
+			}
+			// Remember, so the superclasses are only searched once
+			renderers.put(type, renderer);
+		}
+		return (EntityRenderer<Entity>) renderer;
+	}
+}
@@ -0,0 +1,657 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import acm.graphics.GCompound;
+import acm.graphics.GContainer;
+import acm.graphics.GObject;
+import acm.graphics.GOval;
+import acm.graphics.GRect;
+import acm.graphics.GLabel;
+import acm.graphics.GRectangle;
+
+import programming.breakout.engine.Ball;
+import programming.breakout.engine.Entity;
+import programming.breakout.engine.GameState;
+import programming.breakout.engine.Rectangle;
+import programming.breakout.engine.Paddle;
+import programming.breakout.engine.Vector2D;
+
+import static programming.breakout.engine.GameState.GameDelta;
+
+/**
+ * Everything that is drawn of the game. The scene keeps the graphical objects
+ * of a container in sync with the game state. It does not depend on a window,
+ * so it can draw to the screen as well as to an offscreen image.
+ */
+class Scene {
+
+	/**
+	 * The game state
+	 */
+	private GameState state;
+	private GContainer container;
+	private double scale;
+	private double width, height;
+
+	static final Color bgColor = Color.BLACK;
+	static final Color objColor = Color.WHITE;
+	private static final Color SHADOW_COLOR = Color.RED;
+	private static final double SHADOW_DELTA = 3;
+	private static final double SHADOW_FADE = .9;
+	private static final int PARTICLE_MIN_COUNT = 50;
+	private static final int PARTICLE_MAX_COUNT = 65;
+	private static final double PARTICLE_SPEED = 2;
+	private static final double PARTICLE_TORQUE = Math.PI/5;
+	private static final double PARTICLE_MIN_VERTICES = 3;
+	private static final double PARTICLE_MAX_VERTICES = 5;
+	private static final double PARTICLE_MIN_SIZE = .5;
+	private static final double PARTICLE_MAX_SIZE = 2;
+	private static final Vector2D PARTICLE_GRAVITY = new Vector2D(0, .4);
+
+	private double fieldOffsetX, fieldOffsetY;
+
+	private HashMap<Entity, Stamp> entities = new HashMap<Entity, Stamp>();
+	private RendererRegistry renderers = new RendererRegistry();
+
+	private EntityRenderer<Ball> ballRenderer =
+		new EntityRenderer<Ball>(objColor, PARTICLE_SPEED) {
+			@Override
+			Shape createTemplate(Ball ball, double scale) {
+				return new Ellipse2D.Double(0, 0, 2*ball.getRadius() * scale,
+				                            2*ball.getRadius() * scale);
+			}
+
+			@Override
+			double getWidth(Ball ball) {
+				return 2*ball.getRadius();
+			}
+
+			@Override
+			double getHeight(Ball ball) {
+				return 2*ball.getRadius();
+			}
+		};
+
+	/**
+	 * Particles of a destroyed paddle fly faster
+	 */
+	private EntityRenderer<Paddle> paddleRenderer =
+		new EntityRenderer<Paddle>(objColor, PARTICLE_SPEED*5) {
+			@Override
+			Shape createTemplate(Paddle paddle, double scale) {
+				//Draw paddle as an arc, with a smaller arc cut out of its bottom
+				double arcStart = Math.toDegrees((Math.PI - paddle.getAngle())/2);
+				double arcExtent = Math.toDegrees(paddle.getAngle());
+
+				Area arc = new Area
+					(new Arc2D.Double((paddle.getWidth()/2-paddle.getRadius())*scale,
+					                  0,
+					                  paddle.getRadius()*2*scale,
+					                  paddle.getRadius()*2*scale,
+					                  arcStart, arcExtent, Arc2D.PIE));
+
+				double hideOffset = paddle.getHeight()/2*scale;
+				arc.subtract(new Area
+					(new Arc2D.Double((paddle.getWidth()/2-paddle.getRadius())*scale
+					                  + hideOffset/2,
+					                  hideOffset,
+					                  paddle.getRadius()*2*scale - hideOffset,
+					                  paddle.getRadius()*2*scale - hideOffset,
+					                  arcStart, arcExtent, Arc2D.PIE)));
+				return arc;
+			}
+
+			@Override
+			double getWidth(Paddle paddle) {
+				return paddle.getWidth();
+			}
+
+			@Override
+			double getHeight(Paddle paddle) {
+				return paddle.getHeight();
+			}
+		};
+	private ParticleSystem particles =
+		new ParticleSystem(objColor, PARTICLE_GRAVITY.getX0(),
+		                   PARTICLE_GRAVITY.getX1());
+	private GCompound playingField = new GCompound();
+	private BrickLayer brickLayer = new BrickLayer(objColor);
+	private GCompound background = new GCompound();
+	private GCompound shadowComp = new GCompound();
+	private GCompound instructions = new GCompound();
+	private GCompound gameOver = new GCompound();
+	private HashMap<Ball, Vector2D> lastLocations = new HashMap<Ball, Vector2D>();
+	private ArrayDeque<GameDelta> deltas = new ArrayDeque<GameDelta>();
+	private boolean needsRedraw = false;
+	private DirtyRegion dirty = new DirtyRegion();
+	private QualityGovernor governor;
+	private long inputTimestamp = GameDelta.NO_INPUT;
+
+	/**
+	 * Create a new scene drawing into the given container
+	 * @param frameBudget the time drawing a frame may take in milliseconds
+	 */
+	Scene(GameState state, GContainer container, double frameBudget) {
+		this.state = state;
+		this.container = container;
+		this.governor = new QualityGovernor(frameBudget);
+
+		renderers.register(Ball.class, ballRenderer);
+		renderers.register(Paddle.class, paddleRenderer);
+	}
+
+	/**
+	 * Tell the scene how long the last frame took, so that it can adjust the
+	 * amount of effects
+	 */
+	void frameRendered(long nanos) {
+		governor.frameRendered(nanos);
+	}
+
+	/**
+	 * Resize the scene and draw everything again
+	 * @param width width of the drawing area in pixels
+	 * @param height height of the drawing area in pixels
+	 */
+	void resize(double width, double height) {
+		this.width = width;
+		this.height = height;
+		rescale();
+	}
+
+	/**
+	 * Initialize instructions compound
+	 */
+	private void drawInstructions() {
+		GCompound instructions = new GCompound();
+
+		GLabel pause = new GLabel("SPACE to (un)pause");
+		GLabel speed = new GLabel("SHIFT to slow down, CTRL to speed up");
+
+		pause.setFont(new Font(GLabel.DEFAULT_FONT.getFontName(),
+		                       GLabel.DEFAULT_FONT.getStyle(), 50));
+
+		pause.setColor(objColor);
+		speed.setColor(objColor);
+
+		//Align instructions in the center
+		instructions.add(pause, (width - pause.getWidth())/2,
+		                 (height*1.3 + pause.getAscent())/2);
+		instructions.add(speed, (width - speed.getWidth())/2,
+		                 (height*1.3 + pause.getAscent())/2
+		                 + speed.getHeight() + pause.getDescent());
+
+		//Make instructions visible, only if the game is paused
+		instructions.setVisible(state.isPaused() && !state.isGameOver());
+
+		//Replace old instructions compound
+		container.remove(this.instructions);
+		container.add(instructions);
+		this.instructions = instructions;
+	}
+
+	/**
+	 * Initialize instructions compound
+	 */
+	private void drawGameOver() {
+		GCompound gameOver= new GCompound();
+
+		GLabel gameOverLabel = new GLabel("Game Over");
+		GLabel explanation = new GLabel("You ran out of bricks :(");
+
+		gameOverLabel.setFont(new Font(GLabel.DEFAULT_FONT.getFontName(),
+		                               GLabel.DEFAULT_FONT.getStyle(), 50));
+
+		gameOverLabel.setColor(objColor);
+		explanation.setColor(objColor);
+
+		gameOver.add(gameOverLabel, (width - gameOverLabel.getWidth())/2,
+		             (height*1.3 + gameOverLabel.getAscent())/2);
+		gameOver.add(explanation, (width - explanation.getWidth())/2,
+		             (height*1.3 + gameOverLabel.getAscent())/2
+		             + explanation.getHeight() + gameOverLabel.getDescent());
+
+		//Make game over message visibile only if the game is over
+		gameOver.setVisible(state.isGameOver());
+
+		container.remove(this.gameOver);
+		container.add(gameOver);
+		this.gameOver= gameOver;
+	}
+
+	/**
+	 * Rescale window if window size has changed
+	 */
+	private void rescale() {
+		double oldScale = scale;
+		scale = Math.min(width/state.getWidth(),
+		                 height/state.getHeight());
+
+		fieldOffsetX = ( width - state.getWidth() * scale )/2;
+		fieldOffsetY = ( height - state.getHeight() * scale )/2;
+
+		particles.scale(scale/oldScale);
+		particles.setLocation(fieldOffsetX, fieldOffsetY);
+
+		//Stamp the entities with templates for the new scale
+		for (Map.Entry<Entity, Stamp> entry : entities.entrySet()) {
+			renderers.get(entry.getKey())
+				.rescale(entry.getValue(), entry.getKey(), scale);
+		}
+		playingField.setLocation(fieldOffsetX, fieldOffsetY);
+
+		brickLayer.setScale(scale);
+		brickLayer.setLocation(fieldOffsetX, fieldOffsetY);
+
+		shadowComp.scale(scale/oldScale);
+		shadowComp.setLocation(fieldOffsetX, fieldOffsetY);
+
+		drawBackground();
+
+		drawInstructions();
+		drawGameOver();
+
+		dirty.markAllDirty();
+	}
+
+	/**
+	 * Update us when there is a new game state.
+	 */
+	void update(Object arg) {
+		if(arg instanceof GameDelta) {
+			// If we were supplied with information about what changed, we can just
+			// change that
+			deltas.add((GameDelta) arg);
+		}
+		else {
+			// Otherwise we have to redraw everything
+			needsRedraw = true;
+		}
+	}
+
+	/**
+	 * Add an entity to the canvas
+	 */
+	private void addEntity(Entity entity) {
+		if (isBrick(entity)) {
+			//Bricks are drawn into the cached brick layer
+			brickLayer.add((Rectangle) entity);
+			markFieldDirty(entity.getBounds());
+			return;
+		}
+
+		Stamp stamp = renderers.get(entity).create(entity, scale);
+		entities.put(entity, stamp);
+		playingField.add(stamp);
+		markFieldDirty(stamp.getBounds());
+	}
+
+	/**
+	 * Remove an entity from the canvas
+	 */
+	private void removeEntity(Entity entity) {
+		if (isBrick(entity)) {
+			brickLayer.remove((Rectangle) entity);
+			markFieldDirty(entity.getBounds());
+		} else {
+			GObject obj = entities.get(entity);
+			if (obj != null) {
+				markFieldDirty(obj.getBounds());
+				playingField.remove(obj);
+			}
+		}
+
+		//Spawn particles for the destroyed entity
+		spawnParticles(entity.getBounds(),
+		               governor.scaleParticleCount
+		               ((int) (Math.random()*(PARTICLE_MAX_COUNT
+		                                      - PARTICLE_MIN_COUNT))
+		                + PARTICLE_MIN_COUNT),
+		               isBrick(entity)
+		               ? PARTICLE_SPEED
+		               : renderers.get(entity).getParticleSpeed());
+
+		//Remove entity from entities to GObjects mapping
+		entities.remove(entity);
+	}
+
+	/**
+	 * Whether the entity is a brick, which never moves. Bricks are drawn into
+	 * the brick layer instead of being stamped, so they are handled before
+	 * looking up a renderer.
+	 */
+	private boolean isBrick(Entity entity) {
+		return entity instanceof Rectangle && !(entity instanceof Paddle);
+	}
+
+	/**
+	 * Move an entity on the canvas
+	 */
+	private void updateMoved(Entity entity) {
+		GObject obj = entities.get(entity);
+		if(obj != null) {
+			markFieldDirty(obj.getBounds());
+			obj.setLocation(entity.getX()*scale, entity.getY()*scale);
+			markFieldDirty(obj.getBounds());
+
+			if(entity instanceof Ball) {
+				createBallShadow((Ball) entity);
+			}
+		}
+	}
+
+	/**
+	 * Mark a region of the playing field as changed.
+	 */
+	private void markFieldDirty(GRectangle bounds) {
+		dirty.markDirty(bounds.getX() + fieldOffsetX,
+		                bounds.getY() + fieldOffsetY,
+		                bounds.getWidth(), bounds.getHeight());
+	}
+
+	/**
+	 * Mark a region of the playing field given in game units as changed.
+	 */
+	private void markFieldDirty(Rectangle bounds) {
+		dirty.markDirty(bounds.getX()*scale + fieldOffsetX,
+		                bounds.getY()*scale + fieldOffsetY,
+		                bounds.getWidth()*scale,
+		                bounds.getHeight()*scale);
+	}
+
+	/**
+	 * Get when the oldest input processed since the last call happened and
+	 * forget it.
+	 * @return the time as given by {@link System#nanoTime()} or
+	 * {@link GameDelta#NO_INPUT}
+	 */
+	long takeInputTimestamp() {
+		long timestamp = inputTimestamp;
+		inputTimestamp = GameDelta.NO_INPUT;
+		return timestamp;
+	}
+
+	/**
+	 * Get the regions changed since the last repaint
+	 */
+	DirtyRegion getDirtyRegion() {
+		return dirty;
+	}
+
+	/**
+	 * Make a fancy trail for balls
+	 */
+	private void createBallShadow(Ball ball) {
+		Vector2D lastLocation = lastLocations.get(ball);
+		if(lastLocation == null ||
+		   lastLocation.sub(ball.getPosition()).getMagnitude()
+		   > governor.scaleTrailDistance(SHADOW_DELTA)) {
+			lastLocations.put(ball, ball.getPosition());
+			GOval oval = new GOval(ball.getX()*scale, ball.getY()*scale,
+			                       ball.getRadius()*2*scale,
+			                       ball.getRadius()*2*scale);
+			oval.setFilled(true);
+			oval.setColor(SHADOW_COLOR);
+			shadowComp.add(oval);
+		}
+	}
+
+	private void fadeShadows() {
+		ArrayList<GOval> toBeRemoved = new ArrayList<GOval>();
+		double fade = governor.scaleFade(SHADOW_FADE);
+		shadowComp.iterator()
+			.forEachRemaining(obj -> {
+					if(obj instanceof GOval) {
+						GOval oval = (GOval) obj;
+						// Move oval so that after shrinking the center stays in place
+						oval.move(oval.getWidth()*(1 - fade )/2
+						          * state.getTimeFactor(),
+						          oval.getHeight()*(1 - fade )/2
+						          * state.getTimeFactor());
+
+						// Shrink oval
+						oval.scale(1 - state.getTimeFactor()
+						           + fade*state.getTimeFactor());
+
+						if(oval.getHeight() < 1) {
+							// If oval is smaller than one pixel, remove it.
+							toBeRemoved.add(oval);
+						} else {
+							// Fade color of oval
+							Color prevColor = oval.getColor();
+							oval.setColor(new Color(prevColor.getRed(),
+							                        prevColor.getGreen(),
+							                        prevColor.getBlue(),
+							                        (int)
+							                        (prevColor.getAlpha() *
+							                         (1 - state.getTimeFactor() +
+                                          fade*state.getTimeFactor()))));
+            }
+					}
+				});
+		toBeRemoved.forEach(oval -> shadowComp.remove(oval));
+	}
+
+	/**
+	 * Make fancy particles when something is destroyed.
+	 */
+	private void spawnParticles(Rectangle rect, int count, double speed) {
+		for (int i = 0; i < count; i += 1) {
+			//Create particle with random velocity, torque, and shape
+			particles.add((Math.random()*rect.getWidth() + rect.getX())*scale,
+			              (Math.random()*rect.getHeight() + rect.getY())*scale,
+			              Math.random()*speed*2 - speed,
+			              Math.random()*speed*2 - speed,
+			              Math.random()*PARTICLE_TORQUE*2 - PARTICLE_TORQUE,
+			              getRandomPolygon((Math.random()*(PARTICLE_MAX_SIZE
+			                                                - PARTICLE_MIN_SIZE)
+			                                 + PARTICLE_MIN_SIZE ) * scale));
+		}
+	}
+
+	/**
+	 * Create a random polygon within a square of the given size
+	 * @return the x and y coordinates of the vertices, alternating, relative to
+	 * the center of the polygon
+	 */
+	double[] getRandomPolygon(double size) {
+		int vertices =
+			(int) ( Math.random()*( PARTICLE_MAX_VERTICES - PARTICLE_MIN_VERTICES)
+			        + PARTICLE_MIN_VERTICES );
+
+		double[] poly = new double[vertices*2];
+		double minX = size, minY = size, maxX = 0, maxY = 0;
+		for (int i = 0; i < vertices; i += 1) {
+			poly[2*i] = Math.random()*size;
+			poly[2*i + 1] = Math.random()*size;
+			minX = Math.min(minX, poly[2*i]);
+			minY = Math.min(minY, poly[2*i + 1]);
+			maxX = Math.max(maxX, poly[2*i]);
+			maxY = Math.max(maxY, poly[2*i + 1]);
+		}
+
+		//Center the polygon on its bounding box
+		for (int i = 0; i < vertices; i += 1) {
+			poly[2*i] -= (minX + maxX)/2;
+			poly[2*i + 1] -= (minY + maxY)/2;
+		}
+
+		return poly;
+	}
+
+	/**
+	 * Redraw everything
+	 */
+	void redrawAll() {
+		entities.clear();
+		playingField = new GCompound();
+
+		//Bricks are rendered into the brick layer all at once
+		ArrayList<Rectangle> bricks = new ArrayList<Rectangle>();
+		for (int i = 0; i < state.getEntityList().size(); i += 1) {
+			Entity entity = state.getEntityList().get(i);
+			if (isBrick(entity)) {
+				bricks.add((Rectangle) entity);
+			} else {
+				addEntity(entity);
+			}
+		}
+		brickLayer.reset(state.getWidth(), state.getHeight(), scale, bricks);
+
+		playingField.setLocation(fieldOffsetX, fieldOffsetY);
+
+		brickLayer.setLocation(fieldOffsetX, fieldOffsetY);
+
+		container.removeAll();
+		container.add(shadowComp);
+		container.add(brickLayer);
+		container.add(playingField);
+		container.add(particles);
+
+		//Background is drawn over the playing field, to clip it's contents
+		drawBackground();
+
+		drawInstructions();
+		drawGameOver();
+
+		dirty.markAllDirty();
+	}
+
+	/**
+	 * Draw the sides and the border
+	 */
+	private void drawBackground() {
+		GCompound buffer = new GCompound();
+
+		GRect left = new GRect(0, 0, fieldOffsetX, height);
+		GRect right = new GRect(width - fieldOffsetX, 0,
+		                        fieldOffsetX, height);
+		GRect top = new GRect(0, 0, width, fieldOffsetY);
+		GRect bottom = new GRect(0, height-fieldOffsetY,
+		                         width, fieldOffsetY);
+		GRect border = new GRect(fieldOffsetX, fieldOffsetY,
+		                         state.getWidth()*scale - 1,
+		                         state.getHeight()*scale - 1);
+		left.setFilled(true);
+		right.setFilled(true);
+		top.setFilled(true);
+		bottom.setFilled(true);
+
+		left.setColor(bgColor);
+		right.setColor(bgColor);
+		top.setColor(bgColor);
+		bottom.setColor(bgColor);
+		border.setColor(objColor);
+
+		buffer.add(left);
+		buffer.add(right);
+		buffer.add(top);
+		buffer.add(bottom);
+		buffer.add(border);
+
+		buffer.markAsComplete();
+
+		//Replace old background
+		container.add(buffer);
+		container.remove(background);
+		this.background = buffer;
+	}
+
+	/**
+	 * Process all accumulated deltas and animate one frame
+	 */
+	void tick() {
+		//Particles and trail are repainted where they were and where they are
+		//after this frame
+		dirty.markDirty(particles.getBounds());
+		dirty.markDirty(shadowComp.getBounds());
+
+		//Register all accumulated deltas
+		ArrayDeque<GameDelta> deltasThisFrame = deltas;
+		deltas = new ArrayDeque<GameDelta>();
+		if (needsRedraw) {
+			redrawAll();
+			needsRedraw = false;
+		} else {
+			for (GameDelta delta : deltasThisFrame) {
+				processDelta(delta);
+			}
+		}
+
+		//Animate particles and ball trail
+		if (!state.isPaused()) {
+			//Remove particles that are out of the window
+			particles.tick(state.getTimeFactor(), height);
+			fadeShadows();
+		}
+
+		dirty.markDirty(particles.getBounds());
+		dirty.markDirty(shadowComp.getBounds());
+	}
+
+	/**
+	 * Process a game delta
+	 */
+	private void processDelta(GameDelta delta) {
+		if(delta.pausedToggled) {
+			instructions.setVisible(state.isPaused() && !state.isGameOver());
+			dirty.markAllDirty();
+		}
+
+		if (delta.gameOverToggled && state.isGameOver()) {
+			instructions.setVisible(false);
+			gameOver.setVisible(true);
+			dirty.markAllDirty();
+		}
+
+		//Timestamps from System.nanoTime() may overflow, so they are compared
+		//by their difference
+		if (delta.inputTimestamp != GameDelta.NO_INPUT &&
+		    (inputTimestamp == GameDelta.NO_INPUT ||
+		     delta.inputTimestamp - inputTimestamp < 0)) {
+			inputTimestamp = delta.inputTimestamp;
+		}
+
+		for(Entity entity : delta.entitiesMoved) {
+			updateMoved(entity);
+		}
+
+		for(Entity entity : delta.entitiesDestroyed) {
+			removeEntity(entity);
+		}
+
+		for(Entity entity : delta. entitiesAdded) {
+			addEntity(entity);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright: 2016 Jan Path
+ *            2016 Felix von der Heide
+ *
+ * This file is part of Breakout.
+ *
+ * Breakout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Breakout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Breakout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package programming.breakout.view;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+
+import acm.graphics.GObject;
+import acm.graphics.GRectangle;
+
+/**
+ * An object filling a shared template shape at its location. Many stamps can
+ * use the same template, so they are cheap to create and to rescale.
+ */
+@SuppressWarnings("serial")
+class Stamp extends GObject {
+	private Shape template;
+
+	/**
+	 * @param template the shape in pixels, relative to the location
+	 */
+	Stamp(Shape template) {
+		this.template = template;
+	}
+
+	/**
+	 * Use another template, e.g. after the scale changed
+	 */
+	void setTemplate(Shape template) {
+		this.template = template;
+		repaint();
+	}
+
+	@Override
+	public void paint(Graphics g) {
+		Graphics2D g2 = (Graphics2D) g;
+		double x = getX(), y = getY();
+		g2.setColor(getColor());
+		g2.translate(x, y);
+		g2.fill(template);
+		g2.translate(-x, -y);
+	}
+
+	@Override
+	public GRectangle getBounds() {
+		Rectangle2D bounds = template.getBounds2D();
+		return new GRectangle(getX() + bounds.getX(), getY() + bounds.getY(),
+		                      bounds.getWidth(), bounds.getHeight());
+	}
+}